@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs a script of gitlet commands, one per line, in a single process,
+ * so that the repository's caches stay loaded from one command to the
+ * next. While a Daemon serves the repository each line is sent to it
+ * instead, so its caches never fall behind changes made here. Each
+ * line is split into words like a shell would: words are separated by
+ * blanks, single quotes keep everything up to the next single quote,
+ * double quotes keep everything up to the next unescaped double quote
+ * with \" and \\ as escapes, and a backslash outside quotes keeps the
+ * next character. Blank lines and lines starting with '#' are skipped.
+ *
+ *  A command that fails reports its error and the script goes on with
+ *  the next line, as if each line had been run on its own.
+ *  @author Wesley Zhang
+ */
+class Batch {
+
+    /** Runs the commands read from IN until it ends.
+     *
+     * @param in script to run
+     * @return 1 if any command failed unexpectedly or could not be
+     * parsed, and otherwise 0
+     * */
+    static int run(BufferedReader in) throws IOException {
+        int status = 0;
+        int lineNumber = 0;
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            lineNumber += 1;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            List<String> args = split(line);
+            if (args == null) {
+                System.out.println("Line " + lineNumber
+                        + ": unterminated quote.");
+                status = 1;
+            } else if (args.get(0).equals("batch")
+                    || args.get(0).equals("daemon")) {
+                System.out.println("Line " + lineNumber + ": "
+                        + args.get(0) + " cannot be run in a batch.");
+                status = 1;
+            } else if (runCommand(args.toArray(new String[0])) != 0) {
+                status = 1;
+            }
+            System.out.flush();
+        }
+        return status;
+    }
+
+    /** Runs the command ARGS in the daemon of the repository in the
+     * current directory if one is running, and otherwise in this
+     * process.
+     *
+     * @param args command and operands
+     * @return exit status
+     * */
+    private static int runCommand(String... args) {
+        int status = Daemon.send(Main.GITLET_FOLDER, args);
+        return status >= 0 ? status : Main.runCommand(args);
+    }
+
+    /** Splits LINE into words.
+     *
+     * @param line one line of a script
+     * @return its words, or null if a quote is not closed
+     * */
+    static List<String> split(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else if (c == '\\' && i + 1 < line.length()
+                        && (line.charAt(i + 1) == '"'
+                            || line.charAt(i + 1) == '\\')) {
+                    i += 1;
+                    word.append(line.charAt(i));
+                } else {
+                    word.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                inWord = true;
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    i += 1;
+                    word.append(line.charAt(i));
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (quote != 0) {
+            return null;
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+}
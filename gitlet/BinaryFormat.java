@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** Low-level helpers shared by gitlet's binary on-disk formats:
+ * unsigned LEB128 varints, length-prefixed UTF-8 strings, and SHA-1
+ * IDs stored as 20 raw bytes instead of 40 hex characters.
+ * @author Wesley Zhang
+ */
+class BinaryFormat {
+
+    /** Length in bytes of a raw SHA-1 ID. */
+    static final int ID_BYTES = 20;
+
+    /** Writes the non-negative VALUE to OUT as an unsigned varint.
+     *
+     * @param out stream to write to
+     * @param value value to write
+     * */
+    static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Reads an unsigned varint from BUF.
+     *
+     * @param buf buffer to read from
+     * @return value read
+     * */
+    static long readVarint(ByteBuffer buf) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    /** Reads an unsigned varint that must fit in an int from BUF.
+     *
+     * @param buf buffer to read from
+     * @return value read
+     * */
+    static int readVarint32(ByteBuffer buf) {
+        long value = readVarint(buf);
+        if (value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("varint out of range");
+        }
+        return (int) value;
+    }
+
+    /** Writes STR to OUT as a varint byte length followed by its UTF-8
+     * bytes.
+     *
+     * @param out stream to write to
+     * @param str string to write
+     * */
+    static void writeString(OutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /** Reads a string written by writeString from BUF.
+     *
+     * @param buf buffer to read from
+     * @return string read
+     * */
+    static String readString(ByteBuffer buf) {
+        int length = readVarint32(buf);
+        String result;
+        if (buf.hasArray()) {
+            result = new String(buf.array(),
+                    buf.arrayOffset() + buf.position(), length,
+                    StandardCharsets.UTF_8);
+            buf.position(buf.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buf.get(bytes);
+            result = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    /** Writes the hex SHA-1 ID to OUT as 20 raw bytes.
+     *
+     * @param out stream to write to
+     * @param id 40-character hex ID
+     * */
+    static void writeId(OutputStream out, String id) throws IOException {
+        out.write(idBytes(id));
+    }
+
+    /** Reads a raw 20-byte ID from BUF.
+     *
+     * @param buf buffer to read from
+     * @return 40-character hex ID
+     * */
+    static String readId(ByteBuffer buf) {
+        char[] result = new char[2 * ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int b = buf.get() & 0xFF;
+            result[2 * i] = HEX[b >>> 4];
+            result[2 * i + 1] = HEX[b & 0xF];
+        }
+        return new String(result);
+    }
+
+    /** Returns the 20 raw bytes of the hex SHA-1 ID. Throws
+     * IllegalArgumentException if ID is not a full hex SHA-1.
+     *
+     * @param id 40-character hex ID
+     * @return raw bytes
+     * */
+    static byte[] idBytes(String id) {
+        if (id.length() != 2 * ID_BYTES) {
+            throw new IllegalArgumentException("not a SHA-1 id: " + id);
+        }
+        byte[] result = new byte[ID_BYTES];
+        for (int i = 0; i < ID_BYTES; i += 1) {
+            int hi = Character.digit(id.charAt(2 * i), 16);
+            int lo = Character.digit(id.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("not a SHA-1 id: " + id);
+            }
+            result[i] = (byte) ((hi << 4) | lo);
+        }
+        return result;
+    }
+
+    /** Returns BYTES as a lower-case hexadecimal numeral.
+     *
+     * @param bytes bytes to convert
+     * @return hex string
+     * */
+    static String toHex(byte[] bytes) {
+        char[] result = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i += 1) {
+            int b = bytes[i] & 0xFF;
+            result[2 * i] = HEX[b >>> 4];
+            result[2 * i + 1] = HEX[b & 0xF];
+        }
+        return new String(result);
+    }
+
+    /** Hexadecimal digits. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+}
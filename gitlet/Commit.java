@@ -1,70 +1,403 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
+/** A commit, stored on disk in a compact versioned binary format:
+ *
+ *    magic      "GLC" followed by a one-byte format VERSION
+ *    varint     length of the header that follows
+ *    header     parent count (0, 1 or 2), that many raw 20-byte parent
+ *               IDs, the time as 8 bytes of epoch millis, and the
+ *               varint-length UTF-8 message
+ *    tree       the raw 20-byte ID of the root Tree of the snapshot
+ *
+ *  A commit's ID is the SHA-1 of that encoding. Version 1 commits hold
+ *  a flat file table instead of a tree: the varint number of tracked
+ *  files, then for each, in name order, the varint number of bytes
+ *  shared with the previous name, the varint length and UTF-8 bytes of
+ *  the rest of the name, and the raw 20-byte blob ID. They are still
+ *  read, as are commits written by older versions with Java
+ *  serialization, which are rewritten in the current format the first
+ *  time they are loaded.
+ *  @author Wesley Zhang
+ */
 public class Commit implements Serializable {
-    /** Commits folder. */
-    static final File COMMIT_FOLDER = Utils.join(Main.GITLET_FOLDER, "commits");
+    /** Pinned so commits written before this field existed still load. */
+    private static final long serialVersionUID = -641578296227775688L;
 
-    /** Blobs folder. */
-    static final File BLOB_FOLDER = Utils.join(Main.GITLET_FOLDER, "blobs");
+    /** Fields of the legacy serialized form of a commit. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("_time", Timestamp.class),
+        new ObjectStreamField("_message", String.class),
+        new ObjectStreamField("_parent", String.class),
+        new ObjectStreamField("_parent2", String.class),
+        new ObjectStreamField("_blobs", TreeMap.class),
+    };
 
-    /** Class constructor.
+    /** Magic bytes that start every binary commit file. */
+    static final byte[] MAGIC = {'G', 'L', 'C'};
+
+    /** Current version of the binary commit format. */
+    static final int VERSION = 2;
+
+    /** Version of the binary format with a flat file table. */
+    private static final int FLAT_VERSION = 1;
+
+    /** Bytes read up front for a header-only load; longer headers
+     * take a second read. */
+    private static final int HEADER_READ = 512;
+
+    /** A new commit whose trees are kept in STORE.
      *
      * @param message Commit message
      * @param parent Commit's parent
+     * @param store object database of the commit's repository
      * */
-    public Commit(String message, String parent) {
-        _time = new Timestamp(System.currentTimeMillis());
+    Commit(String message, String parent, ObjectDatabase store) {
+        _time = System.currentTimeMillis();
         _message = message;
         _parent = parent;
         _parent2 = parent;
         _blobs = new TreeMap<>();
+        _store = store;
     }
 
     /**
-     * Reads in and deserializes a commit from a file
-     * with name NAME in COMMIT_FOLDER.
-     * If a commit with name passed in doesn't exist,
-     * throw IllegalArgumentException error.
+     * Reads in and deserializes a commit from a file with name NAME
+     * in FOLDER, which may belong to another repository. Goes through
+     * CommitCache, which is safe because commits are content-addressed.
+     * A commit still in the legacy serialized form is upgraded in place.
+     * If a commit with name passed in doesn't exist, throws
+     * IllegalArgumentException.
      *
+     * @param folder commits folder to read from
      * @param name Name of commit to load
      * @return Commit read from file
      */
-    public static Commit fromFile(String name) {
-        File file = Utils.join(COMMIT_FOLDER, name);
-        if (!file.exists()) {
+    public static Commit fromFile(File folder, String name) {
+        return read(storeOf(folder), name);
+    }
+
+    /**
+     * Reads in and decodes the commit with name NAME from the object
+     * database STORE, going through CommitCache. A commit still in the
+     * legacy serialized form is upgraded in place if it is a loose file.
+     *
+     * @param store object database to read from
+     * @param name Name of commit to load
+     * @return Commit read from STORE
+     */
+    static Commit read(ObjectDatabase store, String name) {
+        Commit commit = CommitCache.get(store, name);
+        if (commit != null) {
+            return commit;
+        }
+        if (!store.has(ObjectStore.COMMIT, name)) {
             throw new IllegalArgumentException();
         }
-        Commit commit = Utils.readObject(file, Commit.class);
+        byte[] bytes = store.read(ObjectStore.COMMIT, name);
+        if (isLegacy(bytes)) {
+            commit = readLegacy(bytes);
+            commit._store = store;
+            if (store instanceof ObjectStore
+                    && ((ObjectStore) store).file(ObjectStore.COMMIT, name)
+                        .isFile()) {
+                ((ObjectStore) store).replace(ObjectStore.COMMIT, name,
+                        commit.encode());
+            }
+        } else {
+            commit = decode(bytes, store);
+        }
+        commit._id = name;
+        CommitCache.put(store, name, commit);
+        return commit;
+    }
+
+    /**
+     * Reads only the header (parents, time and message) of the commit
+     * with name NAME in FOLDER, going through CommitCache. Its blobs are
+     * loaded the first time getBlobs is called, so history walks never
+     * decode file trees. Only the start of a compressed commit is
+     * inflated. Legacy serialized commits have no separate header, and
+     * packed commits are already mapped, so both are read in full.
+     *
+     * @param folder commits folder to read from
+     * @param name Name of commit to load
+     * @return Commit whose blobs are loaded lazily
+     */
+    public static Commit headerFromFile(File folder, String name) {
+        return readHeader(storeOf(folder), name);
+    }
+
+    /**
+     * Reads only the header of the commit with name NAME from the
+     * object database STORE, going through CommitCache.
+     *
+     * @param store object database to read from
+     * @param name Name of commit to load
+     * @return Commit whose blobs are loaded lazily
+     */
+    static Commit readHeader(ObjectDatabase store, String name) {
+        Commit commit = CommitCache.get(store, name);
+        if (commit != null) {
+            return commit;
+        }
+        ByteBuffer buf;
+        try (InputStream in = store.open(ObjectStore.COMMIT, name)) {
+            buf = ByteBuffer.wrap(in.readNBytes(HEADER_READ));
+            if (!isLegacy(buf.array())) {
+                int headerEnd = headerEnd(buf);
+                if (buf.get(MAGIC.length) != FLAT_VERSION) {
+                    headerEnd += BinaryFormat.ID_BYTES;
+                }
+                if (headerEnd > buf.limit()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(headerEnd);
+                    bigger.put(buf);
+                    bigger.put(in.readNBytes(headerEnd - buf.limit()));
+                    buf = bigger.flip();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (isLegacy(buf.array())) {
+            return read(store, name);
+        }
+        commit = decodeHeader(buf, store);
+        commit._id = name;
+        CommitCache.put(store, name, commit);
+        return commit;
+    }
+
+    /** Returns the object database of the repository whose commits
+     * folder is FOLDER.
+     *
+     * @param folder commits folder
+     * @return object database
+     * */
+    static ObjectDatabase storeOf(File folder) {
+        return ObjectStore.database(folder.getParentFile());
+    }
+
+    /** Returns the offset just past the header of the binary commit
+     * whose first bytes are in BUF, leaving BUF's position unchanged.
+     *
+     * @param buf start of a commit file
+     * @return end of the header
+     * */
+    private static int headerEnd(ByteBuffer buf) {
+        ByteBuffer dup = buf.duplicate();
+        dup.position(MAGIC.length + 1);
+        int length = BinaryFormat.readVarint32(dup);
+        return dup.position() + length;
+    }
+
+    /** Returns true iff BYTES hold a commit in the legacy Java
+     * serialization format rather than the binary format.
+     *
+     * @param bytes contents of a commit file
+     * @return whether the commit is serialized
+     * */
+    static boolean isLegacy(byte[] bytes) {
+        return bytes.length >= 2
+                && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED;
+    }
+
+    /** Deserializes a commit written with Java serialization.
+     *
+     * @param bytes contents of a legacy commit file
+     * @return Commit
+     * */
+    static Commit readLegacy(byte[] bytes) {
+        try (ObjectInputStream in =
+                     new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Commit) in.readObject();
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reads the legacy serialized fields of a commit.
+     *
+     * @param in stream to read from
+     * */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Timestamp time = (Timestamp) fields.get("_time", null);
+        _time = time == null ? 0 : time.getTime();
+        _message = (String) fields.get("_message", null);
+        _parent = (String) fields.get("_parent", null);
+        _parent2 = (String) fields.get("_parent2", null);
+        _blobs = (TreeMap<String, String>) fields.get("_blobs", null);
+        if (_blobs == null) {
+            _blobs = new TreeMap<>();
+        }
+    }
+
+    /** Decodes a commit from the binary format.
+     *
+     * @param bytes contents of a commit file
+     * @param store object database the commit was read from
+     * @return Commit
+     * */
+    static Commit decode(byte[] bytes, ObjectDatabase store) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        Commit commit = decodeHeader(buf, store);
+        if (commit._flat) {
+            commit._blobs = decodeBlobs(buf);
+        }
         return commit;
     }
 
-    /** Return sha1 code of commit.
+    /** Decodes the magic, version, header and tree of a binary commit
+     * from BUF, leaving a version 1 commit's BUF positioned at its file
+     * table. The result's blobs are null.
+     *
+     * @param buf buffer holding at least the commit's header
+     * @param store object database the commit was read from
+     * @return Commit without blobs
+     * */
+    private static Commit decodeHeader(ByteBuffer buf,
+                                       ObjectDatabase store) {
+        byte[] magic = new byte[MAGIC.length];
+        buf.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IllegalArgumentException("not a commit file");
+        }
+        int version = buf.get();
+        if (version != VERSION && version != FLAT_VERSION) {
+            throw new IllegalArgumentException("unknown commit version "
+                    + version);
+        }
+        BinaryFormat.readVarint32(buf);
+        int parents = buf.get();
+        String parent = parents > 0 ? BinaryFormat.readId(buf) : null;
+        String parent2 = parents > 1 ? BinaryFormat.readId(buf) : parent;
+        long time = buf.getLong();
+        String message = BinaryFormat.readString(buf);
+        Commit commit = new Commit(message, parent, store);
+        commit._parent2 = parent2;
+        commit._time = time;
+        commit._blobs = null;
+        if (version == FLAT_VERSION) {
+            commit._flat = true;
+        } else {
+            commit._tree = BinaryFormat.readId(buf);
+        }
+        return commit;
+    }
+
+    /** Decodes the file table of a binary commit from BUF.
+     *
+     * @param buf buffer positioned at the file table
+     * @return file name to blob sha1 map
+     * */
+    private static TreeMap<String, String> decodeBlobs(ByteBuffer buf) {
+        TreeMap<String, String> blobs = new TreeMap<>();
+        int count = BinaryFormat.readVarint32(buf);
+        byte[] name = new byte[64];
+        for (int i = 0; i < count; i += 1) {
+            int shared = BinaryFormat.readVarint32(buf);
+            int rest = BinaryFormat.readVarint32(buf);
+            if (shared + rest > name.length) {
+                name = Arrays.copyOf(name, 2 * (shared + rest));
+            }
+            buf.get(name, shared, rest);
+            String file = new String(name, 0, shared + rest,
+                    StandardCharsets.UTF_8);
+            blobs.put(file, BinaryFormat.readId(buf));
+        }
+        return blobs;
+    }
+
+    /** Returns this commit in the binary format.
+     * @return encoded commit
+     * */
+    byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encode(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /** Writes this commit in the binary format to OUT.
+     *
+     * @param out stream to write to
+     * */
+    void encode(OutputStream out) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        if (_parent == null) {
+            header.write(0);
+        } else if (_parent2 == null || _parent2.equals(_parent)) {
+            header.write(1);
+            BinaryFormat.writeId(header, _parent);
+        } else {
+            header.write(2);
+            BinaryFormat.writeId(header, _parent);
+            BinaryFormat.writeId(header, _parent2);
+        }
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            header.write((int) (_time >>> shift));
+        }
+        BinaryFormat.writeString(header, _message);
+        out.write(MAGIC);
+        out.write(VERSION);
+        BinaryFormat.writeVarint(out, header.size());
+        header.writeTo(out);
+        BinaryFormat.writeId(out, getTree());
+    }
+
+    /** Return sha1 code of commit, hashing its binary encoding
+     * in memory.
      * @return Commit's sha1 code
      * */
-    public String commitSha1() throws IOException {
-        File initDummy = new File("name");
-        initDummy.createNewFile();
-        Utils.writeObject(initDummy, this);
-        byte[] initByte = Utils.readContents(initDummy);
-        String code = Utils.sha1(initByte);
-        initDummy.delete();
-        return code;
+    public String commitSha1() {
+        MessageDigest md = Utils.sha1Digest();
+        try (OutputStream out = new DigestOutputStream(
+                OutputStream.nullOutputStream(), md)) {
+            encode(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return BinaryFormat.toHex(md.digest());
     }
 
-    /** Saves a commit to a file for future use.
+    /** Saves a commit to a file in FOLDER, which may belong to another
+     * repository.
      *
+     * @param folder commits folder to write to
      * @param sha1 Commit's Sha1 code
      * */
-    public void saveCommit(String sha1) throws IOException {
-        File commitFile = Utils.join(COMMIT_FOLDER, sha1);
-        commitFile.createNewFile();
-        Utils.writeObject(commitFile, this);
+    public void saveCommit(File folder, String sha1) throws IOException {
+        ObjectDatabase store = storeOf(folder);
+        store.write(ObjectStore.COMMIT, sha1, encode());
+        _id = sha1;
+        if (store == _store) {
+            CommitCache.put(store, sha1, this);
+        }
     }
 
     /** Gets the parent of the commit.
@@ -103,36 +436,92 @@ public class Commit implements Serializable {
         return this._message;
     }
 
-    /** Gets the timestamp of the commit.
-     * @return Commit's timestamp
+    /** Gets the time of the commit.
+     * @return Commit's time in epoch millis
      * */
-    public Timestamp getTime() {
+    public long getTime() {
         return this._time;
     }
 
     /** Sets the time of the commit.
-     * @param time Timestamp
+     * @param time time in epoch millis
      * */
-    public void setTime(Timestamp time) {
+    public void setTime(long time) {
         this._time = time;
     }
 
-    /** Gets the blobs of the current commit.
-     * @return Commit's blobs
+    /** Gets the blobs of the current commit: every file in its
+     * snapshot, flattened from its tree or, for a version 1 commit
+     * whose header alone was loaded, read from disk. The map may be
+     * shared through CommitCache, so it cannot be changed.
+     * @return Commit's blobs, read-only
      * */
-    public TreeMap<String, String> getBlobs() {
-        return this._blobs;
+    public SortedMap<String, String> getBlobs() {
+        boolean loaded = false;
+        synchronized (this) {
+            if (_blobs == null) {
+                if (_tree != null) {
+                    _blobs = Tree.flatten(_store, _tree);
+                } else {
+                    ByteBuffer buf = ByteBuffer.wrap(
+                            _store.read(ObjectStore.COMMIT, _id));
+                    buf.position(headerEnd(buf));
+                    _blobs = decodeBlobs(buf);
+                }
+                loaded = true;
+            }
+        }
+        if (loaded && _id != null) {
+            CommitCache.put(_store, _id, this);
+        }
+        return Collections.unmodifiableSortedMap(this._blobs);
+    }
+
+    /** Number of files whose blobs are loaded, without loading them.
+     * @return 0 for a header-only commit, else the number of blobs
+     * */
+    synchronized int loadedBlobCount() {
+        return _blobs == null ? 0 : _blobs.size();
     }
 
     /** Sets the blobs of the current commit.
      * @param blob Commit's blobs
      * */
-    public void setBlobs(TreeMap<String, String> blob) {
+    public synchronized void setBlobs(TreeMap<String, String> blob) {
         this._blobs = blob;
+        this._tree = null;
     }
 
-    /** Timestamp of commit. */
-    private Timestamp _time;
+    /** Gets the sha1 of the commit's root tree, writing the trees of
+     * its blobs first if it has none yet.
+     * @return root tree sha1
+     * */
+    public synchronized String getTree() {
+        if (_tree == null) {
+            _tree = Tree.fromBlobs(_store, _blobs);
+        }
+        return _tree;
+    }
+
+    /** Sets the commit's snapshot to the root tree with sha1 TREE.
+     * @param tree root tree sha1
+     * */
+    public synchronized void setTree(String tree) {
+        this._tree = tree;
+        this._blobs = null;
+    }
+
+    /** Returns true iff this commit was read from a file holding a flat
+     * file table rather than a tree, so its trees may exist only in
+     * memory.
+     * @return whether the commit is stored without a tree
+     * */
+    boolean isFlat() {
+        return _flat;
+    }
+
+    /** Time of commit in epoch millis. */
+    private long _time;
 
     /** Commit message. */
     private String _message;
@@ -143,8 +532,20 @@ public class Commit implements Serializable {
     /** Second parent. */
     private String _parent2;
 
-    /** TreeMap of the commit's blobs. */
+    /** TreeMap of the commit's blobs, or null until loaded. */
     private TreeMap<String, String> _blobs;
 
+    /** Sha1 of the commit's root tree, or null until written. */
+    private transient String _tree;
+
+    /** Object store holding the commit's trees. */
+    private transient ObjectDatabase _store;
+
+    /** True iff the commit was stored with a flat file table. */
+    private transient boolean _flat;
+
+    /** Sha1 of the commit, once it has been read or saved. */
+    private transient String _id;
+
 
 }
@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/** A process-wide, size-bounded, least-recently-used cache of commits
+ * read from disk. Each entry is weighted by the size of its blob map,
+ * so a few commits with very large trees cannot crowd out the heap.
+ * Commits are content-addressed, so an entry never goes stale; callers
+ * must treat cached commits as read-only. Entries are kept per object
+ * database, since a commit loads its trees from the database it was
+ * read from and another repository's database may lack the commit.
+ * @author Wesley Zhang
+ */
+class CommitCache {
+
+    /** Maximum total weight of cached commits. Can be overridden with
+     * the gitlet.commitCacheWeight system property. */
+    static final long MAX_WEIGHT =
+            Long.getLong("gitlet.commitCacheWeight", 1 << 18);
+
+    /** Returns the commit with sha1 ID cached for STORE, or null if it
+     * is absent.
+     *
+     * @param store object database the commit is read from
+     * @param id commit sha1
+     * @return cached commit or null
+     * */
+    static synchronized Commit get(ObjectDatabase store, String id) {
+        Commit commit = _entries.get(new Key(store, id));
+        if (commit == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return commit;
+    }
+
+    /** Caches COMMIT, read from or saved to STORE, under sha1 ID,
+     * evicting the least recently used entries until the cache is
+     * within MAX_WEIGHT. A commit heavier than MAX_WEIGHT on its own is
+     * not cached.
+     *
+     * @param store object database holding the commit
+     * @param id commit sha1
+     * @param commit commit to cache
+     * */
+    static synchronized void put(ObjectDatabase store, String id,
+                                 Commit commit) {
+        Key key = new Key(store, id);
+        long weight = weigh(commit);
+        Long old = _weights.remove(key);
+        if (old != null) {
+            _entries.remove(key);
+            _weight -= old;
+        }
+        if (weight > MAX_WEIGHT) {
+            return;
+        }
+        _entries.put(key, commit);
+        _weights.put(key, weight);
+        _weight += weight;
+        Iterator<Key> iter = _entries.keySet().iterator();
+        while (_weight > MAX_WEIGHT && iter.hasNext()) {
+            Key eldest = iter.next();
+            _weight -= _weights.remove(eldest);
+            iter.remove();
+        }
+    }
+
+    /** Drops every cached commit and resets the counters. */
+    static synchronized void clear() {
+        _entries.clear();
+        _weights.clear();
+        _weight = 0;
+        _hits = 0;
+        _misses = 0;
+    }
+
+    /** Number of lookups served from the cache.
+     * @return hit count
+     * */
+    static synchronized long hits() {
+        return _hits;
+    }
+
+    /** Number of lookups that had to go to disk.
+     * @return miss count
+     * */
+    static synchronized long misses() {
+        return _misses;
+    }
+
+    /** Current total weight of cached commits.
+     * @return cache weight
+     * */
+    static synchronized long weight() {
+        return _weight;
+    }
+
+    /** Weight of COMMIT: one for the commit plus one per tracked file
+     * whose blob is loaded. Header-only commits weigh one until their
+     * blobs are read, at which point Commit re-puts them.
+     *
+     * @param commit commit to weigh
+     * @return weight
+     * */
+    private static long weigh(Commit commit) {
+        return 1 + commit.loadedBlobCount();
+    }
+
+    /** The object database and sha1 a commit is cached under. */
+    private static final class Key {
+        /** Key for commit ID in STORE.
+         *
+         * @param store object database
+         * @param id commit sha1
+         * */
+        Key(ObjectDatabase store, String id) {
+            _store = store;
+            _id = id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return _store == other._store && _id.equals(other._id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(_store), _id);
+        }
+
+        /** Object database the commit belongs to. */
+        private final ObjectDatabase _store;
+
+        /** Commit sha1. */
+        private final String _id;
+    }
+
+    /** Cached commits in access order, least recently used first. */
+    private static final LinkedHashMap<Key, Commit> _entries =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Weight each entry in _entries was cached with. */
+    private static final HashMap<Key, Long> _weights = new HashMap<>();
+
+    /** Total weight of _entries. */
+    private static long _weight;
+
+    /** Hit counter. */
+    private static long _hits;
+
+    /** Miss counter. */
+    private static long _misses;
+}
@@ -0,0 +1,500 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Predicate;
+
+/** The commit graph of a repository, kept in .gitlet/commit-graph so
+ * that ancestry questions never have to open commit files. The file is
+ * a 4-byte header ("GLG" and a version byte) followed by one fixed-width
+ * record per commit, in an order where every commit comes after its
+ * parents:
+ *
+ *    20 bytes   raw commit ID
+ *    4 bytes    index of the first parent, or -1
+ *    4 bytes    index of the second parent, or -1
+ *    8 bytes    commit time in epoch millis
+ *    4 bytes    generation: 1 for a root, else 1 + the largest
+ *               generation of its parents
+ *
+ *  Records are appended as commits are written, under a lock on the
+ *  file; a writer that finds the file longer than it last saw maps it
+ *  again before appending, so processes never write over each other's
+ *  records. The file is read through a memory map, and commits are
+ *  found by ID through the repository's CommitIdIndex, plus a table of
+ *  the few records added since that index was written. A repository
+ *  without the file gets one built from its commits folder the first
+ *  time it is opened. A file ending in part of a record, left by an
+ *  interrupted write, is cut back to its last whole record; commits
+ *  whose records are lost that way are added again from their headers
+ *  when a child of theirs is added.
+ *  @author Wesley Zhang
+ */
+class CommitGraph {
+
+    /** Name of the graph file inside a .gitlet folder. */
+    static final String FILE_NAME = "commit-graph";
+
+    /** Magic bytes and version that start the file. */
+    private static final byte[] HEADER = {'G', 'L', 'G', 1};
+
+    /** Width of one record. */
+    private static final int RECORD = 40;
+
+    /** Offset of the first parent within a record. */
+    private static final int PARENT1 = 20;
+
+    /** Offset of the second parent within a record. */
+    private static final int PARENT2 = 24;
+
+    /** Offset of the time within a record. */
+    private static final int TIME = 28;
+
+    /** Offset of the generation within a record. */
+    private static final int GENERATION = 36;
+
+    /** Returns the commit graph of the repository whose metadata folder
+     * is GITLETDIR, building the graph file first if it is missing.
+     * Graphs are shared per folder and reloaded if another process
+     * has added records to the file.
+     *
+     * @param gitletDir a .gitlet folder
+     * @return its commit graph
+     * */
+    static synchronized CommitGraph of(File gitletDir) {
+        File file = Utils.join(gitletDir, FILE_NAME);
+        String key = Utils.pathKey(file);
+        CommitGraph graph = _graphs.get(key);
+        if (graph == null || graph._mappedLength != file.length()) {
+            graph = new CommitGraph(gitletDir, file);
+            _graphs.put(key, graph);
+        }
+        return graph;
+    }
+
+    /** A graph for the repository in GITLETDIR stored in FILE.
+     *
+     * @param gitletDir a .gitlet folder
+     * @param file its graph file
+     * */
+    private CommitGraph(File gitletDir, File file) {
+        _commits = Utils.join(gitletDir, "commits");
+        _file = file;
+        _idsFile = Utils.join(gitletDir, CommitIdIndex.FILE_NAME);
+        _tail = new HashMap<>();
+        _pending = new ArrayList<>();
+        if (!file.exists()) {
+            rebuild();
+        }
+        map();
+    }
+
+    /** Number of commits in the graph.
+     * @return commit count
+     * */
+    synchronized int size() {
+        return _size;
+    }
+
+    /** Returns the index of commit ID, or -1 if it is not in the graph.
+     *
+     * @param id commit sha1
+     * @return index of ID
+     * */
+    synchronized int indexOf(String id) {
+        Integer index = _tail.get(id);
+        return index != null ? index : _ids.find(BinaryFormat.idBytes(id));
+    }
+
+    /** Returns the sorted ID index that covers most of the graph.
+     * @return commit ID index
+     * */
+    synchronized CommitIdIndex ids() {
+        return _ids;
+    }
+
+    /** Returns true iff commit ID is in the graph.
+     *
+     * @param id commit sha1
+     * @return whether ID is known
+     * */
+    boolean contains(String id) {
+        return indexOf(id) >= 0;
+    }
+
+    /** Returns the ID of the commit at INDEX.
+     *
+     * @param index commit index
+     * @return commit sha1
+     * */
+    synchronized String id(int index) {
+        return BinaryFormat.readId(record(index));
+    }
+
+    /** Returns the index of the first parent of commit INDEX, or -1.
+     *
+     * @param index commit index
+     * @return first parent index
+     * */
+    synchronized int parent1(int index) {
+        return record(index).getInt(PARENT1);
+    }
+
+    /** Returns the index of the second parent of commit INDEX, or -1 if
+     * it is not a merge commit.
+     *
+     * @param index commit index
+     * @return second parent index
+     * */
+    synchronized int parent2(int index) {
+        return record(index).getInt(PARENT2);
+    }
+
+    /** Returns the time of commit INDEX in epoch millis.
+     *
+     * @param index commit index
+     * @return commit time
+     * */
+    synchronized long time(int index) {
+        return record(index).getLong(TIME);
+    }
+
+    /** Returns the generation number of commit INDEX.
+     *
+     * @param index commit index
+     * @return generation
+     * */
+    synchronized int generation(int index) {
+        return record(index).getInt(GENERATION);
+    }
+
+    /** Adds commit ID, whose contents are COMMIT, to the graph if it
+     * is not already there, and returns its index. Parents missing from
+     * the graph are added first from this repository's commits folder.
+     * If another process has appended to the file since it was mapped,
+     * it is mapped again and ID is appended after those records.
+     *
+     * @param id commit sha1
+     * @param commit the commit
+     * @return index of ID
+     * */
+    synchronized int add(String id, Commit commit) {
+        int index = indexOf(id);
+        if (index >= 0) {
+            return index;
+        }
+        int p1 = -1;
+        int p2 = -1;
+        if (commit.getParent() != null) {
+            p1 = addWithAncestors(commit.getParent());
+        }
+        if (commit.getParent2() != null
+                && !commit.getParent2().equals(commit.getParent())) {
+            p2 = addWithAncestors(commit.getParent2());
+        }
+        int generation = 1;
+        if (p1 >= 0) {
+            generation = Math.max(generation, generation(p1) + 1);
+        }
+        if (p2 >= 0) {
+            generation = Math.max(generation, generation(p2) + 1);
+        }
+        ByteBuffer rec = ByteBuffer.allocate(RECORD);
+        rec.put(BinaryFormat.idBytes(id));
+        rec.putInt(p1).putInt(p2).putLong(commit.getTime())
+                .putInt(generation);
+        rec.flip();
+        synchronized (LOCK) {
+            try (FileChannel channel = open()) {
+                channel.lock();
+                if (channel.size() != _mappedLength) {
+                    map(channel);
+                    index = indexOf(id);
+                    if (index >= 0) {
+                        return index;
+                    }
+                }
+                long position = HEADER.length + (long) _size * RECORD;
+                if (channel.size() != position) {
+                    throw new IllegalArgumentException(
+                            "commit-graph changed while adding " + id);
+                }
+                while (rec.hasRemaining()) {
+                    channel.write(rec, position + rec.position());
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        rec.rewind();
+        _pending.add(rec);
+        _tail.put(id, _size);
+        _size += 1;
+        _mappedLength += RECORD;
+        if (_tail.size() > CommitIdIndex.TAIL_LIMIT) {
+            index();
+        }
+        return _size - 1;
+    }
+
+    /** Appends commit ID and any of its ancestors that are missing from
+     * the graph, reading their headers from this repository's commits
+     * folder, and returns the index of ID.
+     *
+     * @param id commit sha1
+     * @return index of ID
+     * */
+    synchronized int addWithAncestors(String id) {
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            String top = stack.peek();
+            if (contains(top)) {
+                stack.pop();
+                continue;
+            }
+            Commit commit = Commit.headerFromFile(_commits, top);
+            boolean ready = true;
+            for (String parent : parentsOf(commit)) {
+                if (!contains(parent)) {
+                    stack.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                add(top, commit);
+                stack.pop();
+            }
+        }
+        return indexOf(id);
+    }
+
+    /** Returns true iff commit ANCESTOR is DESCENDANT or one of its
+     * ancestors. Commits with a generation lower than ANCESTOR's cannot
+     * reach it, so the walk never goes below that generation.
+     *
+     * @param ancestor candidate ancestor sha1
+     * @param descendant candidate descendant sha1
+     * @return whether ANCESTOR is reachable from DESCENDANT
+     * */
+    synchronized boolean isAncestor(String ancestor, String descendant) {
+        int target = indexOf(ancestor);
+        int start = indexOf(descendant);
+        if (target < 0 || start < 0) {
+            return false;
+        }
+        int floor = generation(target);
+        BitSet seen = new BitSet(_size);
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        work.push(start);
+        seen.set(start);
+        while (!work.isEmpty()) {
+            int index = work.pop();
+            if (index == target) {
+                return true;
+            }
+            for (int parent : new int[] {parent1(index), parent2(index)}) {
+                if (parent >= 0 && !seen.get(parent)
+                        && generation(parent) >= floor) {
+                    seen.set(parent);
+                    work.push(parent);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the IDs of HEAD and every ancestor of it that is not in
+     * STOP, without walking past commits in STOP, ordered so that each
+     * commit follows its parents. This is the set of commits another
+     * repository that already has the commits in STOP is missing.
+     *
+     * @param head commit sha1 in this graph
+     * @param stop commits the receiving side already has
+     * @return missing commits, parents first
+     * */
+    synchronized List<String> missing(String head, Predicate<String> stop) {
+        ArrayList<Integer> found = new ArrayList<>();
+        BitSet seen = new BitSet(_size);
+        ArrayDeque<Integer> work = new ArrayDeque<>();
+        int start = indexOf(head);
+        if (start >= 0 && !stop.test(head)) {
+            work.push(start);
+            seen.set(start);
+        }
+        while (!work.isEmpty()) {
+            int index = work.pop();
+            found.add(index);
+            for (int parent : new int[] {parent1(index), parent2(index)}) {
+                if (parent >= 0 && !seen.get(parent)) {
+                    seen.set(parent);
+                    if (!stop.test(id(parent))) {
+                        work.push(parent);
+                    }
+                }
+            }
+        }
+        int[] order = found.stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(order);
+        ArrayList<String> result = new ArrayList<>();
+        for (int index : order) {
+            result.add(id(index));
+        }
+        return result;
+    }
+
+    /** Returns the distinct parents of COMMIT.
+     *
+     * @param commit a commit
+     * @return its parents
+     * */
+    static List<String> parentsOf(Commit commit) {
+        ArrayList<String> parents = new ArrayList<>();
+        if (commit.getParent() != null) {
+            parents.add(commit.getParent());
+        }
+        if (commit.getParent2() != null
+                && !commit.getParent2().equals(commit.getParent())) {
+            parents.add(commit.getParent2());
+        }
+        return parents;
+    }
+
+    /** Returns a buffer positioned at the record for commit INDEX.
+     *
+     * @param index commit index
+     * @return the record, with absolute offsets relative to its start
+     * */
+    private ByteBuffer record(int index) {
+        if (index < 0 || index >= _size) {
+            throw new IndexOutOfBoundsException("no commit " + index);
+        }
+        if (index >= _mappedCount) {
+            return _pending.get(index - _mappedCount).duplicate();
+        }
+        return _map.slice(HEADER.length + index * RECORD, RECORD);
+    }
+
+    /** Maps the graph file, holding its lock. */
+    private void map() {
+        synchronized (LOCK) {
+            try (FileChannel channel = open()) {
+                channel.lock();
+                map(channel);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Maps the graph file open on CHANNEL, whose lock the caller holds,
+     * first cutting off any partial record at its end, and opens the ID
+     * index that covers it.
+     *
+     * @param channel graph file, open for reading and writing
+     * */
+    private void map(FileChannel channel) throws IOException {
+        long length = channel.size();
+        if (length < HEADER.length) {
+            throw new IllegalArgumentException("bad commit-graph file");
+        }
+        long whole = (length - HEADER.length) / RECORD;
+        if (length != HEADER.length + whole * RECORD) {
+            length = HEADER.length + whole * RECORD;
+            channel.truncate(length);
+        }
+        _map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        byte[] header = new byte[HEADER.length];
+        _map.get(0, header);
+        if (!Arrays.equals(header, HEADER)) {
+            throw new IllegalArgumentException("bad commit-graph file");
+        }
+        _mappedCount = (int) whole;
+        _mappedLength = length;
+        _size = _mappedCount;
+        _pending.clear();
+        index();
+    }
+
+    /** Opens the ID index, which rewrites its file if it has fallen too
+     * far behind, and records the IDs of the commits it does not cover
+     * in _tail. */
+    private void index() {
+        _ids = new CommitIdIndex(_idsFile, this);
+        _tail.clear();
+        for (int i = _ids.covered(); i < _size; i += 1) {
+            _tail.put(id(i), i);
+        }
+    }
+
+    /** Returns a channel reading and writing the graph file. A lock taken
+     * through it is released when it is closed.
+     * @return open channel
+     * */
+    private FileChannel open() throws IOException {
+        return FileChannel.open(_file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+
+    /** Writes a graph file covering every commit in the repository,
+     * for repositories created before the graph existed. */
+    private void rebuild() {
+        Utils.writeContents(_file, HEADER);
+        map();
+        for (String id
+                : Commit.storeOf(_commits).list(ObjectStore.COMMIT)) {
+            addWithAncestors(id);
+        }
+    }
+
+    /** Held while this process holds the lock on a graph file, since a
+     * second lock on the same file within one process fails rather than
+     * waits. */
+    private static final Object LOCK = new Object();
+
+    /** Graphs opened so far, by normalized graph file path. */
+    private static final HashMap<String, CommitGraph> _graphs =
+            new HashMap<>();
+
+    /** Commits folder of this graph's repository. */
+    private final File _commits;
+
+    /** Graph file. */
+    private final File _file;
+
+    /** Read-only map of the graph file as of the last map(). */
+    private MappedByteBuffer _map;
+
+    /** Number of records covered by _map. */
+    private int _mappedCount;
+
+    /** Length of the graph file, including records added since it was
+     * mapped. */
+    private long _mappedLength;
+
+    /** Records added since the file was mapped. */
+    private final ArrayList<ByteBuffer> _pending;
+
+    /** Number of commits in the graph. */
+    private int _size;
+
+    /** ID index file. */
+    private final File _idsFile;
+
+    /** Sorted index of the first records of the graph. */
+    private CommitIdIndex _ids;
+
+    /** Index of every commit the ID index does not cover, by ID. */
+    private final HashMap<String, Integer> _tail;
+}
@@ -0,0 +1,303 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/** A sorted index of every commit ID in a repository, kept in
+ * .gitlet/commit-ids, that finds a commit's record in the commit graph
+ * and resolves abbreviated IDs with a binary search instead of a scan of
+ * every commit. The file is a 4-byte header ("GLA" and a version byte),
+ * the number of commit-graph records it covers, a fan-out table of 256
+ * ints giving the number of IDs whose first byte is at most each value,
+ * the raw 20-byte IDs of those commits in sorted order and then, in the
+ * same order, the 4-byte index of each in the graph. It is read through
+ * a memory map and never changes once opened.
+ *
+ *  Commits added to the graph since the file was written are left to
+ *  the graph to look up; once there are more than TAIL_LIMIT of them the
+ *  file is rewritten to cover the whole graph.
+ *  @author Wesley Zhang
+ */
+class CommitIdIndex {
+
+    /** Name of the index file inside a .gitlet folder. */
+    static final String FILE_NAME = "commit-ids";
+
+    /** Shortest abbreviation that is resolved. */
+    static final int MIN_PREFIX = 4;
+
+    /** Magic bytes and version that start the file. */
+    private static final byte[] HEADER = {'G', 'L', 'A', 2};
+
+    /** Number of entries in the fan-out table. */
+    private static final int FANOUT = 256;
+
+    /** Offset of the first ID. */
+    private static final int IDS = HEADER.length + 4 + FANOUT * 4;
+
+    /** Width of the ID and graph index of one commit. */
+    private static final int ENTRY = BinaryFormat.ID_BYTES + 4;
+
+    /** Largest number of commits left out of the sorted file. */
+    static final int TAIL_LIMIT = 1024;
+
+    /** Returns the ID index of the repository whose metadata folder is
+     * GITLETDIR, which its commit graph keeps.
+     *
+     * @param gitletDir a .gitlet folder
+     * @return its commit ID index
+     * */
+    static CommitIdIndex of(File gitletDir) {
+        return CommitGraph.of(gitletDir).ids();
+    }
+
+    /** An index stored in FILE for the commits in GRAPH, rewriting the
+     * file first if it is missing, does not match GRAPH or is too far
+     * behind it.
+     *
+     * @param file index file
+     * @param graph commit graph of the same repository
+     * */
+    CommitIdIndex(File file, CommitGraph graph) {
+        _file = file;
+        _graph = graph;
+        if (!map() || graph.size() - _covered > TAIL_LIMIT) {
+            rewrite();
+            map();
+        }
+    }
+
+    /** Returns the full IDs of the commits whose ID starts with PREFIX,
+     * stopping once LIMIT have been found. PREFIX may be in either case.
+     *
+     * @param prefix start of a commit ID
+     * @param limit most IDs wanted
+     * @return matching commit IDs, sorted
+     * */
+    List<String> matching(String prefix, int limit) {
+        prefix = prefix.toLowerCase();
+        TreeSet<String> result = new TreeSet<>();
+        byte[] low = lowerBound(prefix);
+        if (low == null) {
+            return new ArrayList<>();
+        }
+        int lo = 0;
+        int hi = _covered;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(mid, low) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < _covered && result.size() < limit; i += 1) {
+            String id = id(i);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            result.add(id);
+        }
+        for (int i = _covered; i < _graph.size() && result.size() < limit;
+             i += 1) {
+            String id = _graph.id(i);
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the graph index of the commit with raw ID, or -1 if it is
+     * not among the commits the file covers.
+     *
+     * @param id raw 20-byte commit ID
+     * @return index of ID in the commit graph, or -1
+     * */
+    int find(byte[] id) {
+        int first = id[0] & 0xFF;
+        int lo = start(first);
+        int hi = start(first + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(mid, id);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return _map.getInt(IDS + _covered * BinaryFormat.ID_BYTES
+                        + mid * 4);
+            }
+        }
+        return -1;
+    }
+
+    /** Number of commit-graph records, from the first, in the file.
+     * @return covered record count
+     * */
+    int covered() {
+        return _covered;
+    }
+
+    /** Returns the position of the first ID whose first byte is at least
+     * B, from 0 to 256.
+     *
+     * @param b unsigned first byte
+     * @return position in the sorted IDs
+     * */
+    private int start(int b) {
+        return b == 0 ? 0 : _map.getInt(HEADER.length + 4 + (b - 1) * 4);
+    }
+
+    /** Returns the smallest raw ID starting with hex PREFIX, or null if
+     * PREFIX is not hex or is longer than an ID.
+     *
+     * @param prefix lower-case start of a commit ID
+     * @return raw ID or null
+     * */
+    private static byte[] lowerBound(String prefix) {
+        int length = 2 * BinaryFormat.ID_BYTES;
+        if (prefix.length() > length) {
+            return null;
+        }
+        StringBuilder padded = new StringBuilder(prefix);
+        while (padded.length() < length) {
+            padded.append('0');
+        }
+        try {
+            return BinaryFormat.idBytes(padded.toString());
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Compares the ID at INDEX with raw ID as unsigned bytes.
+     *
+     * @param index position in the sorted IDs
+     * @param id raw 20-byte ID
+     * @return comparison result
+     * */
+    private int compare(int index, byte[] id) {
+        int base = IDS + index * BinaryFormat.ID_BYTES;
+        for (int i = 0; i < BinaryFormat.ID_BYTES; i += 1) {
+            int cmp = Integer.compare(_map.get(base + i) & 0xFF,
+                    id[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the ID at INDEX.
+     *
+     * @param index position in the sorted IDs
+     * @return commit sha1
+     * */
+    private String id(int index) {
+        return BinaryFormat.readId(_map.duplicate()
+                .position(IDS + index * BinaryFormat.ID_BYTES));
+    }
+
+    /** Maps the index file.
+     *
+     * @return false if the file is missing, unreadable, covers more
+     * commits than the graph holds or places its last covered commit
+     * anywhere but where the graph has it
+     * */
+    private boolean map() {
+        if (!_file.isFile()) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(_file.toPath())) {
+            long length = channel.size();
+            if (length < IDS) {
+                return false;
+            }
+            _map = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } catch (IOException excp) {
+            return false;
+        }
+        byte[] header = new byte[HEADER.length];
+        _map.get(0, header);
+        _covered = _map.getInt(HEADER.length);
+        if (!Arrays.equals(header, HEADER) || _covered < 0
+                || _covered > _graph.size()
+                || _map.capacity() != IDS + (long) _covered * ENTRY) {
+            _covered = 0;
+            return false;
+        }
+        return _covered == 0
+                || find(BinaryFormat.idBytes(_graph.id(_covered - 1)))
+                    == _covered - 1;
+    }
+
+    /** Writes the index file to cover every commit in the graph. The
+     * file is written to a temporary file of its own and renamed into
+     * place, so readers never see a partial file and processes
+     * rewriting it at the same time cannot write over each other. */
+    private void rewrite() {
+        int size = _graph.size();
+        Integer[] order = new Integer[size];
+        byte[][] ids = new byte[size][];
+        for (int i = 0; i < size; i += 1) {
+            order[i] = i;
+            ids[i] = BinaryFormat.idBytes(_graph.id(i));
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(ids[a], ids[b]));
+        ByteBuffer buf = ByteBuffer.allocate(IDS + size * ENTRY);
+        buf.put(HEADER);
+        buf.putInt(size);
+        int[] fanout = new int[FANOUT];
+        for (byte[] id : ids) {
+            fanout[id[0] & 0xFF] += 1;
+        }
+        int total = 0;
+        for (int b = 0; b < FANOUT; b += 1) {
+            total += fanout[b];
+            buf.putInt(total);
+        }
+        for (int i : order) {
+            buf.put(ids[i]);
+        }
+        for (int i : order) {
+            buf.putInt(i);
+        }
+        try {
+            Path tmp = Files.createTempFile(
+                    _file.getParentFile().toPath(), "tmp-", ".ids");
+            try {
+                Files.write(tmp, buf.array());
+                Files.move(tmp, _file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Index file. */
+    private final File _file;
+
+    /** Commit graph the index was built from. */
+    private final CommitGraph _graph;
+
+    /** Read-only map of the index file. */
+    private MappedByteBuffer _map;
+
+    /** Number of graph records, from the first, in the sorted IDs. */
+    private int _covered;
+}
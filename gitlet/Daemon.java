@@ -0,0 +1,272 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** A long-running gitlet process that serves the commands of one
+ * repository over the Unix domain socket .gitlet/daemon.sock, so that
+ * repeated commands reuse one warm JVM with its caches (commits, commit
+ * graph, packs, working-file index) instead of each starting a new one.
+ * Main forwards its arguments to the daemon when one is running, as
+ * Batch does with each line of a script, and runs the command itself
+ * otherwise.
+ *
+ *  A request is an int argument count followed by each argument in
+ *  modified UTF-8 (as written by DataOutputStream.writeUTF). The reply
+ *  is a sequence of frames, each a kind byte (OUT or ERR), an int length
+ *  and that many bytes of output, ended by an EXIT byte and the int
+ *  exit status. Commands are served one at a time.
+ *  @author Wesley Zhang
+ */
+class Daemon {
+
+    /** Name of the socket file inside a .gitlet folder. */
+    static final String SOCKET_NAME = "daemon.sock";
+
+    /** Frame of standard output. */
+    private static final byte OUT = 'o';
+
+    /** Frame of standard error. */
+    private static final byte ERR = 'e';
+
+    /** Final frame, holding the exit status. */
+    private static final byte EXIT = 'x';
+
+    /** Size of output buffers, and so of most frames. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Runs ARGS in the daemon for GITLETDIR, if one is running, copying
+     * its output to System.out and System.err and exiting with its exit
+     * status if that is not 0.
+     *
+     * @param gitletDir a .gitlet folder
+     * @param args command and operands
+     * @return false if no daemon is running
+     * */
+    static boolean forward(File gitletDir, String... args) {
+        int status = send(gitletDir, args);
+        if (status < 0) {
+            return false;
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+        return true;
+    }
+
+    /** Runs ARGS in the daemon for GITLETDIR, if one is running, copying
+     * its output to System.out and System.err. Once the command has been
+     * sent, losing the daemon is an error rather than a reason to run the
+     * command again.
+     *
+     * @param gitletDir a .gitlet folder
+     * @param args command and operands
+     * @return the command's exit status, or -1 if no daemon is running
+     * */
+    static int send(File gitletDir, String... args) {
+        File socket = Utils.join(gitletDir, SOCKET_NAME);
+        if (!socket.exists()) {
+            return -1;
+        }
+        SocketChannel channel;
+        try {
+            channel = connect(socket);
+        } catch (IOException excp) {
+            return -1;
+        }
+        int status;
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(
+                            Channels.newOutputStream(channel)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                    Channels.newInputStream(channel));
+            status = copyFrames(in);
+        } catch (IOException excp) {
+            System.err.println("Lost the gitlet daemon: "
+                    + excp.getMessage());
+            status = 1;
+        }
+        System.out.flush();
+        System.err.flush();
+        return status;
+    }
+
+    /** Copies the output frames of a reply from IN to System.out and
+     * System.err.
+     *
+     * @param in reply stream
+     * @return exit status
+     * */
+    private static int copyFrames(DataInputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER];
+        while (true) {
+            byte kind = in.readByte();
+            if (kind == EXIT) {
+                return in.readInt();
+            }
+            PrintStream target = kind == ERR ? System.err : System.out;
+            int length = in.readInt();
+            while (length > 0) {
+                int n = in.read(buffer, 0, Math.min(length, buffer.length));
+                if (n < 0) {
+                    throw new IOException("daemon closed the connection");
+                }
+                target.write(buffer, 0, n);
+                length -= n;
+            }
+        }
+    }
+
+    /** Daemon command: serves commands for GITLETDIR until a client
+     * sends "daemon stop". Exits with an error if a daemon is already
+     * running.
+     *
+     * @param gitletDir a .gitlet folder
+     * */
+    static void serve(File gitletDir) throws IOException {
+        File socket = Utils.join(gitletDir, SOCKET_NAME);
+        if (socket.exists()) {
+            try {
+                connect(socket).close();
+                Main.exitWithError("A daemon is already running.");
+            } catch (IOException excp) {
+                socket.delete();
+            }
+        }
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket.toPath()));
+            boolean running = true;
+            while (running) {
+                try (SocketChannel channel = server.accept()) {
+                    running = serveOne(channel);
+                } catch (IOException excp) {
+                    /* The client went away; serve the next one. */
+                } finally {
+                    System.setOut(stdout);
+                    System.setErr(stderr);
+                }
+            }
+        } finally {
+            socket.delete();
+        }
+    }
+
+    /** Reads one command from CHANNEL, runs it with its output sent back
+     * as frames and sends its exit status.
+     *
+     * @param channel connection to a client
+     * @return false if the command asked the daemon to stop
+     * */
+    private static boolean serveOne(SocketChannel channel)
+            throws IOException {
+        DataInputStream in = new DataInputStream(
+                Channels.newInputStream(channel));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(channel)));
+        boolean stop = args.length == 2 && args[0].equals("daemon")
+                && args[1].equals("stop");
+        System.setOut(new PrintStream(new BufferedOutputStream(
+                new FrameStream(out, OUT), BUFFER), false,
+                StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(new BufferedOutputStream(
+                new FrameStream(out, ERR), BUFFER), false,
+                StandardCharsets.UTF_8));
+        int status = 0;
+        if (args.length > 0 && args[0].equals("daemon") && !stop) {
+            System.out.println("A daemon is already running.");
+        } else if (!stop) {
+            status = Main.runCommand(args);
+        }
+        System.out.flush();
+        System.err.flush();
+        out.writeByte(EXIT);
+        out.writeInt(status);
+        out.flush();
+        return !stop;
+    }
+
+    /** Returns a connection to the daemon listening on SOCKET.
+     *
+     * @param socket socket file
+     * @return open channel
+     * */
+    private static SocketChannel connect(File socket) throws IOException {
+        SocketChannel channel =
+                SocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException excp) {
+            channel.close();
+            throw excp;
+        }
+        return channel;
+    }
+
+    /** An output stream that sends what is written to it as frames of
+     * one kind. */
+    private static class FrameStream extends OutputStream {
+        /** A stream sending frames of KIND to OUT.
+         *
+         * @param out reply stream
+         * @param kind OUT or ERR
+         * */
+        FrameStream(DataOutputStream out, byte kind) {
+            _out = out;
+            _kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (_out) {
+                _out.writeByte(_kind);
+                _out.writeInt(len);
+                _out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (_out) {
+                _out.flush();
+            }
+        }
+
+        /** Reply stream. */
+        private final DataOutputStream _out;
+
+        /** Frame kind. */
+        private final byte _kind;
+    }
+}
@@ -0,0 +1,186 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/** Binary deltas: a compact description of one byte string (the
+ * target) in terms of another (the base), used to store a new version
+ * of a file as its differences from the previous one.
+ *
+ *  A delta is the varint length of the base, the varint length of the
+ *  target and a list of instructions that build the target. A byte
+ *  with its top bit set is a COPY: its low 7 bits are unused, and it is
+ *  followed by the varint offset and varint length of a run of the base
+ *  to append. Any other byte is an INSERT of that many (1 to 127) bytes,
+ *  which follow it.
+ *  @author Wesley Zhang
+ */
+class Delta {
+
+    /** Flag byte of a COPY instruction. */
+    private static final int COPY = 0x80;
+
+    /** Longest INSERT instruction. */
+    private static final int MAX_INSERT = 0x7F;
+
+    /** Length of the blocks of the base that are indexed; shorter
+     * matches are not worth a COPY. */
+    private static final int BLOCK = 16;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** Returns a delta that builds TARGET from BASE.
+     *
+     * @param base base bytes
+     * @param target target bytes
+     * @return delta
+     * */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        varint(out, base.length);
+        varint(out, target.length);
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int power = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            power *= PRIME;
+        }
+        int pending = 0;
+        int i = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i < target.length) {
+            Integer at = i + BLOCK <= target.length ? blocks.get(h) : null;
+            if (at != null && matches(base, at, target, i)) {
+                int start = at;
+                int from = i;
+                while (start > 0 && from > pending
+                        && base[start - 1] == target[from - 1]) {
+                    start -= 1;
+                    from -= 1;
+                }
+                int end = at + BLOCK;
+                int to = i + BLOCK;
+                while (end < base.length && to < target.length
+                        && base[end] == target[to]) {
+                    end += 1;
+                    to += 1;
+                }
+                insert(out, target, pending, from);
+                out.write(COPY);
+                varint(out, start);
+                varint(out, end - start);
+                i = to;
+                pending = to;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK < target.length) {
+                h = (h - target[i] * power) * PRIME + target[i + BLOCK];
+            }
+            i += 1;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the target built by applying DELTA to BASE. Throws
+     * IllegalArgumentException if DELTA was not made from BASE.
+     *
+     * @param base base bytes
+     * @param delta delta made from BASE
+     * @return target bytes
+     * */
+    static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer buf = ByteBuffer.wrap(delta);
+        if (BinaryFormat.readVarint(buf) != base.length) {
+            throw new IllegalArgumentException("delta base mismatch");
+        }
+        byte[] result = new byte[BinaryFormat.readVarint32(buf)];
+        int size = 0;
+        while (buf.hasRemaining()) {
+            int op = buf.get() & 0xFF;
+            if ((op & COPY) != 0) {
+                int offset = BinaryFormat.readVarint32(buf);
+                int length = BinaryFormat.readVarint32(buf);
+                System.arraycopy(base, offset, result, size, length);
+                size += length;
+            } else {
+                buf.get(result, size, op);
+                size += op;
+            }
+        }
+        if (size != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Writes VALUE to OUT as a varint.
+     *
+     * @param out delta being written
+     * @param value non-negative number
+     * */
+    private static void varint(ByteArrayOutputStream out, long value) {
+        try {
+            BinaryFormat.writeVarint(out, value);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes INSERT instructions for TARGET[FROM .. TO) to OUT.
+     *
+     * @param out delta being written
+     * @param target target bytes
+     * @param from start of the run
+     * @param to end of the run
+     * */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        while (from < to) {
+            int n = Math.min(MAX_INSERT, to - from);
+            out.write(n);
+            out.write(target, from, n);
+            from += n;
+        }
+    }
+
+    /** Returns true iff the BLOCK bytes of BASE at A equal those of
+     * TARGET at B.
+     *
+     * @param base base bytes
+     * @param a offset in BASE
+     * @param target target bytes
+     * @param b offset in TARGET
+     * @return whether the blocks match
+     * */
+    private static boolean matches(byte[] base, int a, byte[] target, int b) {
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (base[a + k] != target[b + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the rolling hash of the BLOCK bytes of DATA at START.
+     *
+     * @param data bytes to hash
+     * @param start offset of the block
+     * @return hash
+     * */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k += 1) {
+            h = h * PRIME + data[start + k];
+        }
+        return h;
+    }
+}
@@ -0,0 +1,276 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A line-level three-way merge of two edits of a common base file.
+ * Each side is compared with the base using Diff, and the two lists of
+ * hunks are walked together in base order. Hunks of the two sides whose
+ * base ranges overlap or touch form one region; a region changed on
+ * only one side, or changed identically on both, takes that change,
+ * and any other region becomes a conflict holding just the lines of
+ * that region from each side.
+ *
+ *  Lines are compared as bytes, each decoded as ISO-8859-1 with its line
+ *  terminator kept, so the merged output reproduces the inputs exactly
+ *  whatever their encoding. The output is written line by line to a
+ *  stream.
+ *  @author Wesley Zhang
+ */
+class Diff3 {
+
+    /** Start of a conflict, before the current version. */
+    static final byte[] CONFLICT_START =
+            "<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Separator between the current and given versions of a
+     * conflict. */
+    static final byte[] CONFLICT_MIDDLE =
+            "=======\n".getBytes(StandardCharsets.UTF_8);
+
+    /** End of a conflict, after the given version. */
+    static final byte[] CONFLICT_END =
+            ">>>>>>>\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Largest file, in bytes, merged line by line. */
+    static final int MAX_BYTES = 1 << 23;
+
+    /** Largest table of line pairs Diff may build for one side; files
+     * whose differing middles are larger are merged as a whole. */
+    private static final long MAX_CELLS = 1L << 24;
+
+    /** Returns the rest of IN if it can be merged line by line, and null
+     * if it is binary (holds a NUL byte) or longer than MAX_BYTES.
+     *
+     * @param in contents of a file
+     * @return the contents, or null
+     * */
+    static byte[] text(InputStream in) throws IOException {
+        byte[] bytes = in.readNBytes(MAX_BYTES + 1);
+        if (bytes.length > MAX_BYTES) {
+            return null;
+        }
+        for (byte b : bytes) {
+            if (b == 0) {
+                return null;
+            }
+        }
+        return bytes;
+    }
+
+    /** Writes to OUT the merge of OURS and THEIRS, both edits of BASE.
+     *
+     * @param base contents of the common ancestor
+     * @param ours contents of the current version
+     * @param theirs contents of the given version
+     * @param out stream to write the merged file to
+     * @return true iff the merge has conflicts
+     * */
+    static boolean merge(byte[] base, byte[] ours, byte[] theirs,
+                         OutputStream out) throws IOException {
+        List<String> baseLines = lines(base);
+        List<String> oursLines = lines(ours);
+        List<String> theirsLines = lines(theirs);
+        int[] a = edits(baseLines, oursLines);
+        int[] b = edits(baseLines, theirsLines);
+        if (a == null || b == null) {
+            conflict(oursLines, theirsLines, out);
+            return true;
+        }
+        boolean conflict = false;
+        int i = 0, j = 0, next = 0, shiftA = 0, shiftB = 0;
+        while (i < a.length || j < b.length) {
+            int lo = Math.min(i < a.length ? a[i] : Integer.MAX_VALUE,
+                              j < b.length ? b[j] : Integer.MAX_VALUE);
+            int hi = lo;
+            int endA = i, endB = j;
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                while (endA < a.length && a[endA] <= hi) {
+                    hi = Math.max(hi, a[endA] + a[endA + 1]);
+                    endA += 4;
+                    grew = true;
+                }
+                while (endB < b.length && b[endB] <= hi) {
+                    hi = Math.max(hi, b[endB] + b[endB + 1]);
+                    endB += 4;
+                    grew = true;
+                }
+            }
+            write(baseLines, next, lo, out);
+            int startA = start(a, i, endA, lo, shiftA);
+            int stopA = stop(a, i, endA, hi, shiftA);
+            int startB = start(b, j, endB, lo, shiftB);
+            int stopB = stop(b, j, endB, hi, shiftB);
+            List<String> mine = oursLines.subList(startA, stopA);
+            List<String> yours = theirsLines.subList(startB, stopB);
+            if (endB == j || mine.equals(yours)) {
+                write(mine, 0, mine.size(), out);
+            } else if (endA == i) {
+                write(yours, 0, yours.size(), out);
+            } else {
+                conflict(mine, yours, out);
+                conflict = true;
+            }
+            shiftA = stopA - hi;
+            shiftB = stopB - hi;
+            next = hi;
+            i = endA;
+            j = endB;
+        }
+        write(baseLines, next, baseLines.size(), out);
+        return conflict;
+    }
+
+    /** Returns the line of one side at which the base line LO falls,
+     * given that side's hunks EDITS[FROM .. TO) in the region starting at
+     * LO and its line SHIFT relative to the base before the region.
+     *
+     * @param edits hunks of one side, four ints each
+     * @param from first hunk of the region
+     * @param to end of the region's hunks
+     * @param lo first base line of the region
+     * @param shift side line minus base line before the region
+     * @return first line of the region on that side
+     * */
+    private static int start(int[] edits, int from, int to, int lo,
+                             int shift) {
+        if (from == to) {
+            return lo + shift;
+        }
+        return edits[from + 2] - (edits[from] - lo);
+    }
+
+    /** Returns the line of one side at which the base line HI falls,
+     * given that side's hunks EDITS[FROM .. TO) in the region ending at
+     * HI and its line SHIFT relative to the base before the region.
+     *
+     * @param edits hunks of one side, four ints each
+     * @param from first hunk of the region
+     * @param to end of the region's hunks
+     * @param hi end base line of the region
+     * @param shift side line minus base line before the region
+     * @return end line of the region on that side
+     * */
+    private static int stop(int[] edits, int from, int to, int hi,
+                            int shift) {
+        if (from == to) {
+            return hi + shift;
+        }
+        int last = to - 4;
+        return edits[last + 2] + edits[last + 3]
+            + (hi - edits[last] - edits[last + 1]);
+    }
+
+    /** Returns the hunks that turn BASE into SIDE, as Diff.diffs does,
+     * or null if they would be too costly to find. Lines common to the
+     * start or end of both are skipped before Diff sees them.
+     *
+     * @param base lines of the base
+     * @param side lines of one side
+     * @return hunks of four ints each, or null
+     * */
+    private static int[] edits(List<String> base, List<String> side) {
+        int prefix = 0;
+        int limit = Math.min(base.size(), side.size());
+        while (prefix < limit
+               && base.get(prefix).equals(side.get(prefix))) {
+            prefix += 1;
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix
+               && base.get(base.size() - 1 - suffix)
+                   .equals(side.get(side.size() - 1 - suffix))) {
+            suffix += 1;
+        }
+        int n = base.size() - prefix - suffix;
+        int m = side.size() - prefix - suffix;
+        if (n == 0 && m == 0) {
+            return new int[0];
+        } else if (n == 0 || m == 0) {
+            return new int[] {prefix, n, prefix, m};
+        } else if ((long) (n + 1) * (m + 1) > MAX_CELLS) {
+            return null;
+        }
+        Diff diff = new Diff();
+        diff.setSequences(base.subList(prefix, prefix + n),
+                          side.subList(prefix, prefix + m));
+        int[] result = diff.diffs();
+        for (int k = 0; k < result.length; k += 2) {
+            result[k] += prefix;
+        }
+        return result;
+    }
+
+    /** Returns the lines of CONTENTS, each with its terminator.
+     *
+     * @param contents file contents
+     * @return lines, decoded as ISO-8859-1
+     * */
+    private static List<String> lines(byte[] contents) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = 0;
+        for (int k = 0; k < contents.length; k += 1) {
+            if (contents[k] == '\n') {
+                result.add(new String(contents, start, k + 1 - start,
+                        StandardCharsets.ISO_8859_1));
+                start = k + 1;
+            }
+        }
+        if (start < contents.length) {
+            result.add(new String(contents, start, contents.length - start,
+                    StandardCharsets.ISO_8859_1));
+        }
+        return result;
+    }
+
+    /** Writes a conflict between the lines OURS and THEIRS to OUT. Each
+     * side is ended with a newline if its last line has none, so the
+     * markers stay on lines of their own.
+     *
+     * @param ours current lines
+     * @param theirs given lines
+     * @param out stream to write to
+     * */
+    private static void conflict(List<String> ours, List<String> theirs,
+                                 OutputStream out) throws IOException {
+        out.write(CONFLICT_START);
+        write(ours, 0, ours.size(), out);
+        endLine(ours, out);
+        out.write(CONFLICT_MIDDLE);
+        write(theirs, 0, theirs.size(), out);
+        endLine(theirs, out);
+        out.write(CONFLICT_END);
+    }
+
+    /** Writes a newline to OUT if the last of LINES does not end in one.
+     *
+     * @param lines lines just written
+     * @param out stream to write to
+     * */
+    private static void endLine(List<String> lines, OutputStream out)
+            throws IOException {
+        if (!lines.isEmpty() && !lines.get(lines.size() - 1).endsWith("\n")) {
+            out.write('\n');
+        }
+    }
+
+    /** Writes LINES[FROM .. TO) to OUT.
+     *
+     * @param lines lines, decoded as ISO-8859-1
+     * @param from first line to write
+     * @param to end of the lines to write
+     * @param out stream to write to
+     * */
+    private static void write(List<String> lines, int from, int to,
+                              OutputStream out) throws IOException {
+        for (int k = from; k < to; k += 1) {
+            out.write(lines.get(k).getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+}
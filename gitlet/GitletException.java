@@ -6,7 +6,7 @@ package gitlet;
  *  result of .getMessage() is the error message to be printed.
  *  @author P. N. Hilfinger
  */
-class GitletException extends RuntimeException {
+public class GitletException extends RuntimeException {
 
 
     /** A GitletException with no message. */
@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/** An ObjectDatabase that keeps every object on the heap, for tests and
+ * benchmarks that should not touch the disk. Nothing survives the
+ * process. Objects are kept in a sorted map under their kind byte
+ * followed by their ID, so listing a prefix reads only the objects
+ * that have it.
+ *  @author Wesley Zhang
+ */
+public class MemoryObjectDatabase implements ObjectDatabase {
+
+    @Override
+    public boolean has(byte kind, String id) {
+        return _objects.containsKey(key(kind, id));
+    }
+
+    @Override
+    public InputStream open(byte kind, String id) {
+        byte[] bytes = _objects.get(key(kind, id));
+        if (bytes == null) {
+            throw new IllegalArgumentException("no such object: " + id);
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    @Override
+    public void writeFrom(byte kind, String id, InputStream in) {
+        String key = key(kind, id);
+        if (_objects.containsKey(key)) {
+            return;
+        }
+        try {
+            _objects.putIfAbsent(key, in.readAllBytes());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public List<String> list(byte kind, String prefix) {
+        String from = key(kind, prefix);
+        ArrayList<String> result = new ArrayList<>();
+        for (String key : _objects.tailMap(from).keySet()) {
+            if (!key.startsWith(from)) {
+                break;
+            }
+            result.add(key.substring(1));
+        }
+        return result;
+    }
+
+    /** Returns the map key of the object of KIND with sha1 ID.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1, or a prefix of one
+     * @return map key
+     * */
+    private static String key(byte kind, String id) {
+        return (char) kind + id;
+    }
+
+    /** Contents of every object, by kind and ID. */
+    private final ConcurrentSkipListMap<String, byte[]> _objects =
+            new ConcurrentSkipListMap<>();
+}
@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Finds the best common ancestors (merge bases) of two commits by
+ * walking the commit graph from both sides at once. Commits are visited
+ * in decreasing generation order, each carrying flags saying which
+ * side reached it; a commit reached from both sides is a candidate and
+ * everything below it is marked stale. The walk ends as soon as every
+ * queued commit is stale, so it never visits history below the bases.
+ * Because parents always have lower generations than their children, a
+ * commit's flags are final by the time it leaves the queue.
+ * @author Wesley Zhang
+ */
+class MergeBase {
+
+    /** Reached from the first commit. */
+    private static final int SIDE1 = 1;
+
+    /** Reached from the second commit. */
+    private static final int SIDE2 = 2;
+
+    /** Below a common ancestor already found. */
+    private static final int STALE = 4;
+
+    /** Already recorded as a candidate. */
+    private static final int RESULT = 8;
+
+    /** Returns every best common ancestor of commits ID1 and ID2 in
+     * GRAPH: common ancestors that are not ancestors of another common
+     * ancestor. There is usually exactly one; criss-cross histories can
+     * have several. The result is ordered by decreasing generation,
+     * then decreasing commit time, and is empty if the commits share
+     * no history.
+     *
+     * @param graph commit graph holding both commits
+     * @param id1 first commit sha1
+     * @param id2 second commit sha1
+     * @return merge bases
+     * */
+    static List<String> bases(CommitGraph graph, String id1, String id2) {
+        int one = graph.indexOf(id1);
+        int two = graph.indexOf(id2);
+        if (one < 0 || two < 0) {
+            throw new IllegalArgumentException("commit not in graph");
+        }
+        ArrayList<Integer> found = new ArrayList<>();
+        if (one == two) {
+            found.add(one);
+        } else {
+            found = paint(graph, one, two);
+            found = removeRedundant(graph, found);
+        }
+        found.sort((a, b) -> compare(graph, a, b));
+        ArrayList<String> result = new ArrayList<>();
+        for (int index : found) {
+            result.add(graph.id(index));
+        }
+        return result;
+    }
+
+    /** Walks down from commits ONE and TWO in GRAPH and returns the
+     * common ancestors the walk finds, which include all the best ones.
+     *
+     * @param graph commit graph
+     * @param one first commit index
+     * @param two second commit index
+     * @return candidate merge bases
+     * */
+    private static ArrayList<Integer> paint(CommitGraph graph,
+                                            int one, int two) {
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue =
+                new PriorityQueue<>((a, b) -> compare(graph, a, b));
+        flags.put(one, SIDE1);
+        flags.put(two, SIDE2);
+        queue.add(one);
+        queue.add(two);
+        int active = 2;
+        ArrayList<Integer> result = new ArrayList<>();
+        while (active > 0) {
+            int index = queue.poll();
+            int mark = flags.get(index);
+            if ((mark & STALE) == 0) {
+                active -= 1;
+            }
+            int pass = mark & (SIDE1 | SIDE2 | STALE);
+            if (pass == (SIDE1 | SIDE2)) {
+                if ((mark & RESULT) == 0) {
+                    flags.put(index, mark | RESULT);
+                    result.add(index);
+                }
+                pass |= STALE;
+            }
+            for (int parent
+                    : new int[] {graph.parent1(index), graph.parent2(index)}) {
+                if (parent < 0) {
+                    continue;
+                }
+                Integer old = flags.get(parent);
+                int had = old == null ? 0 : old;
+                if ((had & pass) == pass) {
+                    continue;
+                }
+                boolean wasActive = old != null && (had & STALE) == 0;
+                flags.put(parent, had | pass);
+                boolean isActive = ((had | pass) & STALE) == 0;
+                if (old == null) {
+                    queue.add(parent);
+                    if (isActive) {
+                        active += 1;
+                    }
+                } else if (wasActive && !isActive) {
+                    active -= 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the members of CANDIDATES that are not ancestors of any
+     * other member.
+     *
+     * @param graph commit graph
+     * @param candidates common ancestors
+     * @return best common ancestors
+     * */
+    private static ArrayList<Integer> removeRedundant(
+            CommitGraph graph, ArrayList<Integer> candidates) {
+        if (candidates.size() < 2) {
+            return candidates;
+        }
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int a : candidates) {
+            boolean redundant = false;
+            for (int b : candidates) {
+                if (a != b && graph.isAncestor(graph.id(a), graph.id(b))) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(a);
+            }
+        }
+        return result;
+    }
+
+    /** Orders commits A and B in GRAPH by decreasing generation, then
+     * decreasing time, then decreasing index.
+     *
+     * @param graph commit graph
+     * @param a commit index
+     * @param b commit index
+     * @return comparison result
+     * */
+    private static int compare(CommitGraph graph, int a, int b) {
+        int cmp = Integer.compare(graph.generation(b), graph.generation(a));
+        if (cmp == 0) {
+            cmp = Long.compare(graph.time(b), graph.time(a));
+        }
+        if (cmp == 0) {
+            cmp = Integer.compare(b, a);
+        }
+        return cmp;
+    }
+}
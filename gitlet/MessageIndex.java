@@ -0,0 +1,585 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/** On-disk indexes from commit messages to the commits that have them,
+ * so find never has to read every commit. The message index,
+ * .gitlet/message-index, maps each full message to its commits. The
+ * optional token index, .gitlet/token-index, maps each word of a
+ * message and each three-character run of it, both in lower case, to
+ * the commits whose message has it, for word and substring searches.
+ *
+ *  Both are hash tables in the same format: a 4-byte header ("GLH" and
+ *  a version byte), the number of commit-graph records indexed, the
+ *  number of buckets (a power of two), an int per bucket holding the
+ *  number of its newest record (0 for none), then the records. Each
+ *  record is the 64-bit FNV-1a hash of a key, the raw 20-byte commit
+ *  ID and the number of the next record in its bucket. New commits are
+ *  appended a record at a time, bucket heads are updated after their
+ *  records are written and the indexed count last, so an interrupted
+ *  update is redone rather than lost. A table is rewritten with more
+ *  buckets once it holds twice as many records as buckets.
+ *
+ *  Keys are only hashed, so callers check each commit returned
+ *  against its message.
+ *  @author Wesley Zhang
+ */
+class MessageIndex {
+
+    /** Name of the message index file inside a .gitlet folder. */
+    static final String FILE_NAME = "message-index";
+
+    /** Name of the token index file inside a .gitlet folder. */
+    static final String TOKEN_FILE_NAME = "token-index";
+
+    /** Length of the runs of characters in the token index. */
+    static final int GRAM = 3;
+
+    /** Returns the message index of the repository whose metadata
+     * folder is GITLETDIR. Indexes are shared per folder.
+     *
+     * @param gitletDir a .gitlet folder
+     * @return its message index
+     * */
+    static synchronized MessageIndex of(File gitletDir) {
+        String key = Utils.pathKey(gitletDir);
+        MessageIndex index = _indexes.get(key);
+        if (index == null) {
+            index = new MessageIndex(gitletDir);
+            _indexes.put(key, index);
+        }
+        return index;
+    }
+
+    /** The indexes of the repository in GITLETDIR.
+     *
+     * @param gitletDir a .gitlet folder
+     * */
+    private MessageIndex(File gitletDir) {
+        _gitletDir = gitletDir;
+        _commits = Utils.join(gitletDir, "commits");
+        _messages = Utils.join(gitletDir, FILE_NAME);
+        _tokens = Utils.join(gitletDir, TOKEN_FILE_NAME);
+    }
+
+    /** Indexes every commit in the commit graph that is not yet indexed,
+     * creating the message index if it is missing. The token index is
+     * only kept up to date once it exists. */
+    synchronized void update() {
+        catchUp(_messages, true, MessageIndex::messageKeys);
+        catchUp(_tokens, false, MessageIndex::tokenKeys);
+    }
+
+    /** Rewrites the message index from the commit graph, and the token
+     * index too if it exists or TOKENS is true.
+     *
+     * @param tokens whether to create the token index
+     * */
+    synchronized void rebuild(boolean tokens) {
+        boolean hadTokens = _tokens.isFile();
+        _messages.delete();
+        _tokens.delete();
+        catchUp(_messages, true, MessageIndex::messageKeys);
+        catchUp(_tokens, tokens || hadTokens, MessageIndex::tokenKeys);
+    }
+
+    /** Returns true iff the token index exists.
+     * @return whether word and substring searches are indexed
+     * */
+    boolean hasTokens() {
+        return _tokens.isFile();
+    }
+
+    /** Returns the commits whose message may be MESSAGE.
+     *
+     * @param message commit message
+     * @return candidate commit IDs
+     * */
+    synchronized Set<String> withMessage(String message) {
+        update();
+        return lookup(_messages, messageKeys(message));
+    }
+
+    /** Returns the commits whose message may contain the word WORD, in
+     * any case, or null if there is no token index.
+     *
+     * @param word a word
+     * @return candidate commit IDs, or null
+     * */
+    synchronized Set<String> withWord(String word) {
+        update();
+        if (!hasTokens()) {
+            return null;
+        }
+        return lookup(_tokens, Arrays.asList(
+                "w\0" + word.toLowerCase(Locale.ROOT)));
+    }
+
+    /** Returns the commits whose message may contain TEXT, or null if
+     * there is no token index or TEXT is shorter than GRAM characters.
+     *
+     * @param text text to search for
+     * @return candidate commit IDs, or null
+     * */
+    synchronized Set<String> withSubstring(String text) {
+        update();
+        if (!hasTokens() || text.length() < GRAM) {
+            return null;
+        }
+        return lookup(_tokens, grams(text));
+    }
+
+    /** Returns the commits indexed in FILE under every one of KEYS.
+     *
+     * @param file index file
+     * @param keys keys that must all be present
+     * @return candidate commit IDs
+     * */
+    private static Set<String> lookup(File file, List<String> keys) {
+        Table table = Table.load(file);
+        Set<String> result = null;
+        if (table == null) {
+            return new TreeSet<>();
+        }
+        for (String key : keys) {
+            TreeSet<String> ids = new TreeSet<>(table.get(hash(key)));
+            if (result != null) {
+                ids.retainAll(result);
+            }
+            result = ids;
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result == null ? new TreeSet<>() : result;
+    }
+
+    /** Indexes the commits in the graph that FILE does not cover yet
+     * under the keys KEYS gives for their messages. Nothing is done if
+     * FILE is missing, unless CREATE is true.
+     *
+     * @param file index file
+     * @param create whether to create FILE if it is missing
+     * @param keys the keys of a message
+     * */
+    private void catchUp(File file, boolean create,
+                         Function<String, List<String>> keys) {
+        Table table = Table.load(file);
+        if (table == null && !create) {
+            return;
+        }
+        CommitGraph graph = CommitGraph.of(_gitletDir);
+        int from = table == null ? 0 : table.covered();
+        int to = graph.size();
+        if (table != null && from >= to) {
+            return;
+        }
+        ArrayList<Long> hashes = new ArrayList<>();
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i += 1) {
+            String id = graph.id(i);
+            String message = Commit.headerFromFile(_commits, id).getMessage();
+            for (String key : keys.apply(message)) {
+                hashes.add(hash(key));
+                ids.add(id);
+            }
+        }
+        if (table == null) {
+            Table.write(file, to, hashes, ids);
+        } else {
+            table.append(to, hashes, ids);
+        }
+    }
+
+    /** Returns the message index keys of MESSAGE.
+     *
+     * @param message commit message
+     * @return the message itself
+     * */
+    private static List<String> messageKeys(String message) {
+        return Arrays.asList(message);
+    }
+
+    /** Returns the token index keys of MESSAGE: its distinct words and
+     * runs of GRAM characters, in lower case.
+     *
+     * @param message commit message
+     * @return keys
+     * */
+    private static List<String> tokenKeys(String message) {
+        LinkedHashSet<String> keys = new LinkedHashSet<>();
+        for (String word : words(message)) {
+            keys.add("w\0" + word);
+        }
+        keys.addAll(grams(message));
+        return new ArrayList<>(keys);
+    }
+
+    /** Returns the distinct words of TEXT in lower case, a word being a
+     * run of letters and digits.
+     *
+     * @param text text to split
+     * @return its words
+     * */
+    static Set<String> words(String text) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String word
+                : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the token index keys of the distinct runs of GRAM
+     * characters of TEXT in lower case.
+     *
+     * @param text text to split
+     * @return keys
+     * */
+    private static List<String> grams(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= lower.length(); i += 1) {
+            result.add("g\0" + lower.substring(i, i + GRAM));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the 64-bit FNV-1a hash of the UTF-8 bytes of KEY.
+     *
+     * @param key index key
+     * @return its hash
+     * */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** One hash table file. */
+    private static class Table {
+
+        /** Magic bytes and version that start the file. */
+        private static final byte[] HEADER = {'G', 'L', 'H', 1};
+
+        /** Offset of the number of commit-graph records indexed. */
+        private static final int COVERED = HEADER.length;
+
+        /** Offset of the number of buckets. */
+        private static final int BUCKETS = COVERED + 4;
+
+        /** Offset of the first bucket head. */
+        private static final int HEADS = BUCKETS + 4;
+
+        /** Width of one record. */
+        private static final int RECORD = 8 + BinaryFormat.ID_BYTES + 4;
+
+        /** Fewest buckets in a table. */
+        private static final int MIN_BUCKETS = 64;
+
+        /** The table stored in FILE with NBUCKETS buckets, covering
+         * COVERED commit-graph records.
+         *
+         * @param file table file
+         * @param nbuckets number of buckets
+         * @param covered number of commit-graph records indexed
+         * */
+        private Table(File file, int nbuckets, int covered) {
+            _file = file;
+            _buckets = nbuckets;
+            _covered = covered;
+        }
+
+        /** Returns the table in FILE, or null if it is missing or
+         * unreadable.
+         *
+         * @param file table file
+         * @return table or null
+         * */
+        static Table load(File file) {
+            if (!file.isFile()) {
+                return null;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath())) {
+                ByteBuffer header = ByteBuffer.allocate(HEADS);
+                read(channel, header, 0);
+                byte[] magic = new byte[HEADER.length];
+                header.get(0, magic);
+                int buckets = header.getInt(BUCKETS);
+                if (!Arrays.equals(magic, HEADER) || buckets <= 0
+                        || channel.size() < HEADS + 4L * buckets) {
+                    return null;
+                }
+                return new Table(file, buckets, header.getInt(COVERED));
+            } catch (IOException excp) {
+                return null;
+            }
+        }
+
+        /** Number of commit-graph records indexed.
+         * @return count
+         * */
+        int covered() {
+            return _covered;
+        }
+
+        /** Returns the IDs recorded under key hash HASH, newest first.
+         *
+         * @param hash key hash
+         * @return commit IDs
+         * */
+        List<String> get(long hash) {
+            ArrayList<String> result = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(_file.toPath())) {
+                ByteBuffer head = ByteBuffer.allocate(4);
+                read(channel, head, HEADS + 4L * bucket(hash));
+                int next = head.getInt(0);
+                ByteBuffer rec = ByteBuffer.allocate(RECORD);
+                while (next > 0) {
+                    rec.clear();
+                    read(channel, rec, recordOffset(next));
+                    rec.flip();
+                    long h = rec.getLong();
+                    String id = BinaryFormat.readId(rec);
+                    if (h == hash) {
+                        result.add(id);
+                    }
+                    next = rec.getInt();
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return result;
+        }
+
+        /** Adds records of IDS under HASHES and marks the table as
+         * covering COVERED commit-graph records. The table is rewritten
+         * with more buckets if it would get too full.
+         *
+         * @param covered commit-graph records indexed afterwards
+         * @param hashes key hashes
+         * @param ids commit IDs, one per hash
+         * */
+        void append(int covered, List<Long> hashes, List<String> ids) {
+            ArrayList<Long> allHashes = new ArrayList<>();
+            ArrayList<String> allIds = new ArrayList<>();
+            boolean rewrite;
+            try (FileChannel channel = FileChannel.open(_file.toPath(),
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                int records = (int) ((channel.size() - recordOffset(1))
+                        / RECORD);
+                rewrite = records + hashes.size() > 2L * _buckets;
+                if (rewrite) {
+                    readAll(channel, records, allHashes, allIds);
+                } else {
+                    appendRecords(channel, records, covered, hashes, ids);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (rewrite) {
+                allHashes.addAll(hashes);
+                allIds.addAll(ids);
+                write(_file, covered, allHashes, allIds);
+            }
+        }
+
+        /** Adds records of IDS under HASHES after the RECORDS records
+         * already in the table open on CHANNEL, and marks it as covering
+         * COVERED commit-graph records.
+         *
+         * @param channel open table file
+         * @param records number of records in the table
+         * @param covered commit-graph records indexed afterwards
+         * @param hashes key hashes
+         * @param ids commit IDs, one per hash
+         * */
+        private void appendRecords(FileChannel channel, int records,
+                                   int covered, List<Long> hashes,
+                                   List<String> ids) throws IOException {
+            ByteBuffer rec = ByteBuffer.allocate(RECORD);
+            ByteBuffer head = ByteBuffer.allocate(4);
+            for (int i = 0; i < hashes.size(); i += 1) {
+                long headAt = HEADS + 4L * bucket(hashes.get(i));
+                head.clear();
+                read(channel, head, headAt);
+                records += 1;
+                rec.clear();
+                rec.putLong(hashes.get(i));
+                rec.put(BinaryFormat.idBytes(ids.get(i)));
+                rec.putInt(head.getInt(0));
+                rec.flip();
+                write(channel, rec, recordOffset(records));
+                head.clear();
+                head.putInt(records).flip();
+                write(channel, head, headAt);
+            }
+            head.clear();
+            head.putInt(covered).flip();
+            write(channel, head, COVERED);
+            _covered = covered;
+        }
+
+        /** Writes a new table to FILE holding IDS under HASHES and
+         * covering COVERED commit-graph records. The file is written
+         * to a temporary file of its own and renamed into place, so
+         * concurrent rewrites cannot write over each other.
+         *
+         * @param file table file
+         * @param covered commit-graph records indexed
+         * @param hashes key hashes
+         * @param ids commit IDs, one per hash
+         * */
+        static void write(File file, int covered, List<Long> hashes,
+                          List<String> ids) {
+            int buckets = MIN_BUCKETS;
+            while (buckets < hashes.size()) {
+                buckets *= 2;
+            }
+            Table table = new Table(file, buckets, covered);
+            int[] heads = new int[buckets];
+            ByteBuffer buf = ByteBuffer.allocate(
+                    HEADS + 4 * buckets + RECORD * hashes.size());
+            buf.put(HEADER).putInt(covered).putInt(buckets);
+            buf.position(HEADS + 4 * buckets);
+            for (int i = 0; i < hashes.size(); i += 1) {
+                int b = table.bucket(hashes.get(i));
+                buf.putLong(hashes.get(i));
+                buf.put(BinaryFormat.idBytes(ids.get(i)));
+                buf.putInt(heads[b]);
+                heads[b] = i + 1;
+            }
+            for (int b = 0; b < buckets; b += 1) {
+                buf.putInt(HEADS + 4 * b, heads[b]);
+            }
+            try {
+                Path tmp = Files.createTempFile(
+                        file.getParentFile().toPath(), "tmp-",
+                        "." + file.getName());
+                try {
+                    Files.write(tmp, buf.array());
+                    Files.move(tmp, file.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Adds the first RECORDS records of the table open on CHANNEL,
+         * oldest first, to HASHES and IDS.
+         *
+         * @param channel open table file
+         * @param records number of records
+         * @param hashes receives key hashes
+         * @param ids receives commit IDs
+         * */
+        private void readAll(FileChannel channel, int records,
+                             List<Long> hashes, List<String> ids)
+                throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(RECORD * records);
+            read(channel, buf, recordOffset(1));
+            buf.flip();
+            for (int i = 0; i < records; i += 1) {
+                hashes.add(buf.getLong());
+                ids.add(BinaryFormat.readId(buf));
+                buf.getInt();
+            }
+        }
+
+        /** Returns the bucket of key hash HASH.
+         *
+         * @param hash key hash
+         * @return bucket number
+         * */
+        private int bucket(long hash) {
+            return (int) (hash & (_buckets - 1));
+        }
+
+        /** Returns the file offset of record number N, counting from 1.
+         *
+         * @param n record number
+         * @return offset
+         * */
+        private long recordOffset(int n) {
+            return HEADS + 4L * _buckets + (long) RECORD * (n - 1);
+        }
+
+        /** Fills BUF from CHANNEL starting at file offset POSITION.
+         *
+         * @param channel open file
+         * @param buf buffer to fill
+         * @param position file offset
+         * */
+        private static void read(FileChannel channel, ByteBuffer buf,
+                                 long position) throws IOException {
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, position + buf.position()) < 0) {
+                    throw new IOException("index file is truncated");
+                }
+            }
+        }
+
+        /** Writes the rest of BUF to CHANNEL at file offset POSITION.
+         *
+         * @param channel open file
+         * @param buf bytes to write
+         * @param position file offset
+         * */
+        private static void write(FileChannel channel, ByteBuffer buf,
+                                  long position) throws IOException {
+            long at = position;
+            while (buf.hasRemaining()) {
+                at += channel.write(buf, at);
+            }
+        }
+
+        /** Table file. */
+        private final File _file;
+
+        /** Number of buckets. */
+        private final int _buckets;
+
+        /** Number of commit-graph records indexed. */
+        private int _covered;
+    }
+
+    /** Indexes opened so far, by normalized .gitlet path. */
+    private static final HashMap<String, MessageIndex> _indexes =
+            new HashMap<>();
+
+    /** Metadata folder of the repository. */
+    private final File _gitletDir;
+
+    /** Commits folder of the repository. */
+    private final File _commits;
+
+    /** Message index file. */
+    private final File _messages;
+
+    /** Token index file. */
+    private final File _tokens;
+}
@@ -0,0 +1,165 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/** Where the objects of a repository (blobs, trees and commits, each
+ * named by the SHA-1 of its contents) are kept. Commands, trees and
+ * commits only reach objects through this interface, so the storage
+ * engine can be changed without touching them. ObjectStore keeps
+ * objects in loose files and packs under .gitlet, and is what a
+ * repository uses unless another database is registered for it with
+ * ObjectStore.register; MemoryObjectDatabase keeps them on the heap.
+ *
+ *  Objects are immutable, so writing an object that already exists
+ *  does nothing.
+ *  @author Wesley Zhang
+ */
+public interface ObjectDatabase {
+
+    /** Kind of a blob: the contents of a file. */
+    byte BLOB = 'b';
+
+    /** Kind of a tree. */
+    byte TREE = 't';
+
+    /** Kind of a commit. */
+    byte COMMIT = 'c';
+
+    /** Returns true iff the object of KIND with sha1 ID exists.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @return whether the object exists
+     * */
+    boolean has(byte kind, String id);
+
+    /** Returns a stream of the contents of the object of KIND with sha1
+     * ID. Throws IllegalArgumentException if there is no such object.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @return stream of the object's contents
+     * */
+    InputStream open(byte kind, String id);
+
+    /** Writes the rest of IN as the object of KIND with sha1 ID, unless
+     * the object already exists.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @param in stream of the object's contents
+     * */
+    void writeFrom(byte kind, String id, InputStream in);
+
+    /** Returns the sha1 of every object of KIND that starts with
+     * PREFIX.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param prefix start of the IDs wanted
+     * @return sorted object IDs
+     * */
+    List<String> list(byte kind, String prefix);
+
+    /** Returns the sha1 of every object of KIND.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @return sorted object IDs
+     * */
+    default List<String> list(byte kind) {
+        return list(kind, "");
+    }
+
+    /** Returns the contents of the object of KIND with sha1 ID. Throws
+     * IllegalArgumentException if there is no such object.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @return object contents
+     * */
+    default byte[] read(byte kind, String id) {
+        try (InputStream in = open(kind, id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes BYTES as the object of KIND with sha1 ID, unless the
+     * object already exists.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @param bytes object contents
+     * */
+    default void write(byte kind, String id, byte[] bytes) {
+        writeFrom(kind, id, new ByteArrayInputStream(bytes));
+    }
+
+    /** Writes the contents of SOURCE as the object of KIND with sha1
+     * ID, unless the object already exists.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @param source file holding the object's contents
+     * */
+    default void writeFile(byte kind, String id, File source) {
+        if (has(kind, id)) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            writeFrom(kind, id, in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of the object of KIND with sha1 ID to TARGET,
+     * streaming them without holding the whole object in memory.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @param target file to write
+     * */
+    default void copyTo(byte kind, String id, File target) {
+        try (InputStream in = open(kind, id)) {
+            Files.copy(in, target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Copies the object of KIND with sha1 ID from SOURCE, which may
+     * belong to another repository, unless this database already has
+     * it. The object is streamed, never held in memory whole.
+     *
+     * @param source database to copy from
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * */
+    default void copyFrom(ObjectDatabase source, byte kind, String id) {
+        if (has(kind, id)) {
+            return;
+        }
+        try (InputStream in = source.open(kind, id)) {
+            writeFrom(kind, id, in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Reorganizes the stored objects to save space, if this database
+     * can, and returns the number of objects moved.
+     *
+     * @return number of objects repacked
+     * */
+    default int repack() throws IOException {
+        return 0;
+    }
+}
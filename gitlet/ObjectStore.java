@@ -0,0 +1,1320 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** The objects of one repository: its blobs, trees and commits, each
+ * named by the SHA-1 of its contents. An object is either a loose file
+ * in .gitlet/blobs, .gitlet/trees or .gitlet/commits, or has been moved
+ * by repack into a pack in .gitlet/packs; readers need not care which.
+ * Loose files are sharded by the first two hex digits of their ID, so
+ * object 0ee412ec... is .gitlet/commits/0e/e412ec..., and no directory
+ * grows past a 256th of the objects. Repositories from before sharding
+ * have their loose files moved into shards when their store is opened.
+ *
+ *  An object is stored compressed: a 4-byte header ("GLZ" and a version
+ *  byte) followed by a zlib stream of its contents, written at the
+ *  level given by the gitlet.compression system property. Level 0
+ *  stores objects raw, after a "GLR" header. Objects from before
+ *  compression have no header and are read raw; any of them whose
+ *  contents happen to start like a header is given the raw header when
+ *  it is moved into its shard, so it cannot be mistaken for one.
+ *
+ *  A pack file, pack-SHA1.pack, is a 4-byte header ("GLP" and a version
+ *  byte) followed by objects, each a kind byte, a varint length and the
+ *  object's stored bytes, exactly as they were in its loose file. A blob
+ *  whose previous version (the blob of the same path in the parent
+ *  commit) is also stored may instead be a DELTA entry: the raw ID of
+ *  that base blob followed by a Delta, stored like an object, that
+ *  rebuilds the blob from it. Bases may be deltas themselves, up to
+ *  MAX_DEPTH deep; reads keep recently rebuilt bases in a cache, so
+ *  reading the versions of a file one after another applies one delta
+ *  each.
+ *
+ *  A pack's index, pack-SHA1.idx, is a 4-byte header ("GLX" and a
+ *  version byte), a fan-out table of 256 ints whose entry B counts the
+ *  objects whose ID starts with a byte of at most B, the sorted raw
+ *  20-byte IDs, the 8-byte pack offset of each object and the kind byte
+ *  of each object.
+ *  Both files are memory-mapped; a lookup is a binary search of the IDs
+ *  in one fan-out bucket. A pack is only used once its index exists,
+ *  and the index is written last.
+ *
+ *  ObjectStore is the default ObjectDatabase of a repository; database
+ *  returns the one a repository actually uses.
+ *  @author Wesley Zhang
+ */
+class ObjectStore implements ObjectDatabase {
+
+    /** Compression level for new objects, from 0 (stored raw) to 9.
+     * Can be overridden with the gitlet.compression system property. */
+    static final int LEVEL =
+            Integer.getInteger("gitlet.compression", Deflater.BEST_SPEED);
+
+    /** Magic bytes and version that start a compressed object. */
+    private static final byte[] COMPRESSED = {'G', 'L', 'Z', 1};
+
+    /** Magic bytes and version that start an object stored raw. */
+    private static final byte[] RAW = {'G', 'L', 'R', 1};
+
+    /** Size of stream buffers. */
+    private static final int BUFFER = 1 << 16;
+
+    /** Magic bytes and version that start a pack file. */
+    private static final byte[] PACK_HEADER = {'G', 'L', 'P', 2};
+
+    /** Kind byte of a delta entry in a pack. */
+    private static final byte DELTA = 'd';
+
+    /** Longest chain of deltas repack creates. Can be overridden with the
+     * gitlet.deltaDepth system property; 0 disables deltas. */
+    static final int MAX_DEPTH = Integer.getInteger("gitlet.deltaDepth", 50);
+
+    /** Maximum total size in bytes of the delta bases kept in memory.
+     * Can be overridden with the gitlet.deltaCacheBytes system property. */
+    static final long DELTA_CACHE =
+            Long.getLong("gitlet.deltaCacheBytes", 1 << 26);
+
+    /** Magic bytes and version that start a pack index. */
+    private static final byte[] IDX_HEADER = {'G', 'L', 'X', 1};
+
+    /** Number of ID characters that name a loose object's shard. */
+    private static final int SHARD = 2;
+
+    /** Number of entries in an index's fan-out table. */
+    private static final int FANOUT = 256;
+
+    /** Offset of the first ID in an index. */
+    private static final int IDS = IDX_HEADER.length + FANOUT * 4;
+
+    /** Largest pack repack writes, so every pack can be mapped in one
+     * buffer. Objects too big for a pack of their own stay loose. */
+    private static final long PACK_LIMIT = 1L << 30;
+
+    /** Most bytes the kind and length of a pack entry take. */
+    private static final int ENTRY_OVERHEAD = 11;
+
+    /** Returns the object store of the repository whose metadata folder
+     * is GITLETDIR. Stores are shared per folder.
+     *
+     * @param gitletDir a .gitlet folder
+     * @return its object store
+     * */
+    static synchronized ObjectStore of(File gitletDir) {
+        String key = Utils.pathKey(gitletDir);
+        ObjectStore store = _stores.get(key);
+        if (store == null) {
+            store = new ObjectStore(gitletDir);
+            _stores.put(key, store);
+        }
+        return store;
+    }
+
+    /** Returns the object database of the repository whose metadata
+     * folder is GITLETDIR: the one registered for it, or else its
+     * object store.
+     *
+     * @param gitletDir a .gitlet folder
+     * @return its object database
+     * */
+    static synchronized ObjectDatabase database(File gitletDir) {
+        ObjectDatabase database =
+                _databases.get(Utils.pathKey(gitletDir));
+        return database != null ? database : of(gitletDir);
+    }
+
+    /** Makes DATABASE hold the objects of the repository whose metadata
+     * folder is GITLETDIR in place of its object store.
+     *
+     * @param gitletDir a .gitlet folder
+     * @param database object database to use
+     * */
+    static synchronized void register(File gitletDir,
+                                      ObjectDatabase database) {
+        _databases.put(Utils.pathKey(gitletDir), database);
+    }
+
+    /** The store of the repository in GITLETDIR.
+     *
+     * @param gitletDir a .gitlet folder
+     * */
+    private ObjectStore(File gitletDir) {
+        _blobs = Utils.join(gitletDir, "blobs");
+        _trees = Utils.join(gitletDir, "trees");
+        _commits = Utils.join(gitletDir, "commits");
+        _packDir = Utils.join(gitletDir, "packs");
+        _packs = new ArrayList<>();
+        _packNames = new TreeSet<>();
+        _bases = new LinkedHashMap<>(16, 0.75f, true);
+        for (byte kind : new byte[] {BLOB, TREE, COMMIT}) {
+            shardLooseFiles(kind);
+        }
+        loadPacks();
+    }
+
+    /** Moves any loose objects of KIND left directly in their folder by
+     * an older version into their shards. Such an object is stored raw
+     * without a header; if its contents start like a header, it is
+     * rewritten with the RAW header in front. The new file is installed
+     * before the old one is deleted, so an interrupted move is redone.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * */
+    private void shardLooseFiles(byte kind) {
+        String[] names = folder(kind).list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File file = Utils.join(folder(kind), name);
+            if (rawId(name) == null || !file.isFile()) {
+                continue;
+            }
+            File target = file(kind, name);
+            target.getParentFile().mkdirs();
+            try {
+                if (startsLikeHeader(file.toPath())) {
+                    install(kind, name, tmp -> {
+                        try (OutputStream out = Files.newOutputStream(tmp)) {
+                            out.write(RAW);
+                            Files.copy(file.toPath(), out);
+                        }
+                        return true;
+                    });
+                    Files.delete(file.toPath());
+                } else {
+                    Files.move(file.toPath(), target.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns true iff FILE starts with the COMPRESSED or RAW header.
+     *
+     * @param file a loose object file
+     * @return whether FILE starts like a stored object's header
+     * */
+    private static boolean startsLikeHeader(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file)) {
+            return contentStart(in) != 0;
+        }
+    }
+
+    /** Returns the folder holding loose objects of KIND.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @return loose object folder
+     * */
+    File folder(byte kind) {
+        switch (kind) {
+        case BLOB:
+            return _blobs;
+        case TREE:
+            return _trees;
+        case COMMIT:
+            return _commits;
+        default:
+            throw new IllegalArgumentException("unknown object kind");
+        }
+    }
+
+    /** Returns the loose file of the object of KIND with sha1 ID, which
+     * need not exist.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @return loose object file
+     * */
+    File file(byte kind, String id) {
+        return Utils.join(folder(kind), id.substring(0, SHARD),
+                id.substring(SHARD));
+    }
+
+    /** Returns true iff the object of KIND with sha1 ID exists, loose or
+     * packed.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @return whether the object exists
+     * */
+    @Override
+    public boolean has(byte kind, String id) {
+        byte[] raw = rawId(id);
+        if (raw == null) {
+            return false;
+        }
+        return file(kind, id).isFile() || findPacked(raw) != null
+                || loadPacks() && findPacked(raw) != null;
+    }
+
+    /** Returns a stream of the contents of the object of KIND with sha1
+     * ID, decompressing it as it is read. Throws IllegalArgumentException
+     * if there is no such object.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @return stream of the object's contents
+     * */
+    @Override
+    public InputStream open(byte kind, String id) {
+        byte[] raw = rawId(id);
+        if (raw != null) {
+            File file = file(kind, id);
+            if (file.isFile()) {
+                try {
+                    return decode(Files.newInputStream(file.toPath()));
+                } catch (IOException excp) {
+                    /* Moved into a pack since the check; look there. */
+                }
+            }
+            try {
+                InputStream result = openPacked(raw);
+                if (result == null && loadPacks()) {
+                    result = openPacked(raw);
+                }
+                if (result != null) {
+                    return result;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        throw new IllegalArgumentException("no such object: " + id);
+    }
+
+    /** Writes the rest of IN as the loose object of KIND with sha1 ID,
+     * unless the object already exists. The object is compressed into
+     * a temporary file that is then installed.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @param in stream of the object's contents
+     * */
+    @Override
+    public void writeFrom(byte kind, String id, InputStream in) {
+        if (has(kind, id)) {
+            return;
+        }
+        install(kind, id, tmp -> {
+            try (OutputStream out = encode(Files.newOutputStream(tmp))) {
+                in.transferTo(out);
+            }
+            return true;
+        });
+    }
+
+    /** Rewrites the loose object of KIND with sha1 ID to hold BYTES,
+     * another encoding of the same object. The new file is written
+     * beside the old one and renamed over it, so the object is never
+     * missing, even if the rewrite is interrupted.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @param bytes object contents
+     * */
+    void replace(byte kind, String id, byte[] bytes) {
+        install(kind, id, tmp -> {
+            try (OutputStream out = encode(Files.newOutputStream(tmp))) {
+                out.write(bytes);
+            }
+            return true;
+        });
+    }
+
+    /** Copies the object of KIND with sha1 ID from SOURCE unless this
+     * store already has it. When SOURCE is also an ObjectStore and holds
+     * the object as a loose file or a whole packed entry, its stored
+     * form is copied as is, compressed or not, without being inflated
+     * and deflated again.
+     *
+     * @param source database to copy from
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * */
+    @Override
+    public void copyFrom(ObjectDatabase source, byte kind, String id) {
+        if (has(kind, id)) {
+            return;
+        }
+        if (!(source instanceof ObjectStore) || !install(kind, id,
+                tmp -> ((ObjectStore) source).copyStored(kind, id, tmp,
+                        true))) {
+            ObjectDatabase.super.copyFrom(source, kind, id);
+        }
+    }
+
+    /** Writes the contents of the object of KIND with sha1 ID to TARGET.
+     * An object stored raw (at level 0, or from before compression) is
+     * copied without passing through the heap: from its loose file with
+     * FileChannel.transferTo, which leaves the copy to the kernel, or
+     * straight from the mapped pack. Compressed objects and deltas are
+     * inflated as they are streamed.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @param target file to write
+     * */
+    @Override
+    public void copyTo(byte kind, String id, File target) {
+        try {
+            if (copyStored(kind, id, target.toPath(), false)) {
+                return;
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ObjectDatabase.super.copyTo(kind, id, target);
+    }
+
+    /** Copies the stored form of the object of KIND with sha1 ID to the
+     * file TARGET, replacing it, if the object is a loose file or a
+     * packed entry that is not a delta. Unless COMPRESSED, the object
+     * must be stored raw, and only its contents, without the header,
+     * are copied.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @param target file to write
+     * @param compressed whether a compressed stored form may be copied
+     * @return false, having written nothing, if the object could not be
+     * copied this way
+     * */
+    private boolean copyStored(byte kind, String id, Path target,
+                               boolean compressed) throws IOException {
+        byte[] raw = rawId(id);
+        if (raw == null) {
+            return false;
+        }
+        try (FileChannel in = FileChannel.open(file(kind, id).toPath())) {
+            long start = compressed ? 0 : contentStart(in);
+            if (start < 0) {
+                return false;
+            }
+            try (FileChannel out = create(target)) {
+                long size = in.size();
+                for (long done = start; done < size;) {
+                    done += in.transferTo(done, size - done, out);
+                }
+            }
+            return true;
+        } catch (NoSuchFileException excp) {
+            /* Not loose; look in the packs. */
+        }
+        Pack pack = findPacked(raw);
+        if (pack == null && loadPacks()) {
+            pack = findPacked(raw);
+        }
+        int index = pack == null ? -1 : pack.find(raw);
+        if (index < 0 || pack.isDelta(index)) {
+            return false;
+        }
+        ByteBuffer stored = pack.stored(index);
+        int start = compressed ? 0 : contentStart(stored);
+        if (start < 0) {
+            return false;
+        }
+        stored.position(stored.position() + start);
+        try (FileChannel out = create(target)) {
+            while (stored.hasRemaining()) {
+                out.write(stored);
+            }
+        }
+        return true;
+    }
+
+    /** Returns where the contents of the stored object read by IN
+     * start: after the RAW header, at 0 if it has no header, or -1 if it
+     * is compressed.
+     *
+     * @param in channel of a loose object file
+     * @return offset of the contents, or -1
+     * */
+    private static int contentStart(FileChannel in) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(COMPRESSED.length);
+        while (magic.hasRemaining()
+                && in.read(magic, magic.position()) > 0) {
+            continue;
+        }
+        return magic.hasRemaining() ? 0 : contentStart(magic.array());
+    }
+
+    /** Returns where the contents of the stored object in STORED start,
+     * relative to its position, as contentStart(FileChannel) does.
+     *
+     * @param stored stored bytes of a packed object
+     * @return offset of the contents, or -1
+     * */
+    private static int contentStart(ByteBuffer stored) {
+        if (stored.remaining() < COMPRESSED.length) {
+            return 0;
+        }
+        byte[] magic = new byte[COMPRESSED.length];
+        stored.get(stored.position(), magic);
+        return contentStart(magic);
+    }
+
+    /** Returns where the contents of a stored object whose first bytes
+     * are MAGIC start, as contentStart(FileChannel) does.
+     *
+     * @param magic first bytes of a stored object
+     * @return offset of the contents, or -1
+     * */
+    private static int contentStart(byte[] magic) {
+        if (Arrays.equals(magic, COMPRESSED)) {
+            return -1;
+        }
+        return Arrays.equals(magic, RAW) ? RAW.length : 0;
+    }
+
+    /** Returns a channel writing FILE from the start, creating it or
+     * discarding its old contents.
+     *
+     * @param file file to write
+     * @return open channel
+     * */
+    private static FileChannel create(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /** Makes a new loose object of KIND with sha1 ID from the temporary
+     * file WRITER writes in its folder, which is then renamed into place,
+     * so concurrent writers of the same object cannot leave a torn file.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param id object sha1
+     * @param writer writer of the object's stored form
+     * @return false, leaving no file, if WRITER wrote nothing
+     * */
+    private boolean install(byte kind, String id, StoredWriter writer) {
+        File folder = folder(kind);
+        folder.mkdirs();
+        Path tmp = Utils.join(folder, "tmp-" + UUID.randomUUID()).toPath();
+        try {
+            if (!writer.write(tmp)) {
+                return false;
+            }
+            File target = file(kind, id);
+            target.getParentFile().mkdirs();
+            Files.move(tmp, target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            tmp.toFile().delete();
+        }
+    }
+
+    /** Returns a stream that writes an object's stored form to OUT:
+     * compressed at LEVEL, or raw after the RAW header if LEVEL is 0.
+     *
+     * @param out stream to the object's file
+     * @return stream to write the object's contents to
+     * */
+    private static OutputStream encode(OutputStream out) throws IOException {
+        out = new BufferedOutputStream(out, BUFFER);
+        if (LEVEL == 0) {
+            out.write(RAW);
+            return out;
+        }
+        out.write(COMPRESSED);
+        Deflater deflater = new Deflater(LEVEL);
+        return new DeflaterOutputStream(out, deflater, BUFFER) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /** Returns a stream of the contents of the object whose stored form
+     * is read from IN, inflating it if it is compressed. An object
+     * without a header is from before compression and is read raw.
+     *
+     * @param in stream of an object's stored form
+     * @return stream of its contents
+     * */
+    private static InputStream decode(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER);
+        buffered.mark(COMPRESSED.length);
+        byte[] magic = buffered.readNBytes(COMPRESSED.length);
+        int start = contentStart(magic);
+        if (start == 0) {
+            buffered.reset();
+        }
+        if (start >= 0) {
+            return buffered;
+        }
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(buffered, inflater, BUFFER) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    /** Returns the sha1 of every object of KIND, loose or packed, that
+     * starts with PREFIX. A prefix of two or more characters reads one
+     * shard and one fan-out bucket of each pack.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param prefix start of the IDs wanted
+     * @return sorted object IDs
+     * */
+    @Override
+    public List<String> list(byte kind, String prefix) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String id : looseIds(kind, prefix)) {
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        int first = 0;
+        int last = FANOUT - 1;
+        if (prefix.length() >= SHARD) {
+            if (!isShard(prefix.substring(0, SHARD))) {
+                return new ArrayList<>(result);
+            }
+            first = Integer.parseInt(prefix.substring(0, SHARD), 16);
+            last = first;
+        }
+        loadPacks();
+        for (Pack pack : packs()) {
+            for (int i = pack.start(first); i < pack.start(last + 1);
+                 i += 1) {
+                if (pack.kind(i) == kind && pack.id(i).startsWith(prefix)) {
+                    result.add(pack.id(i));
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the sha1s of the loose objects of KIND in the shards that
+     * could hold IDs starting with PREFIX: one shard if PREFIX has at
+     * least two characters, and every shard otherwise. Shard entries are
+     * recognized by name alone, without a stat per file.
+     *
+     * @param kind BLOB, TREE or COMMIT
+     * @param prefix start of the IDs wanted
+     * @return unsorted object IDs
+     * */
+    private List<String> looseIds(byte kind, String prefix) {
+        ArrayList<String> result = new ArrayList<>();
+        String[] shards;
+        if (prefix.length() >= SHARD) {
+            String shard = prefix.substring(0, SHARD);
+            if (!isShard(shard)) {
+                return result;
+            }
+            shards = new String[] {shard};
+        } else {
+            shards = folder(kind).list();
+        }
+        if (shards == null) {
+            return result;
+        }
+        for (String shard : shards) {
+            if (!isShard(shard)) {
+                continue;
+            }
+            String[] names = Utils.join(folder(kind), shard).list();
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                String id = shard + name;
+                if (rawId(id) != null) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Moves every loose object into new packs and deletes the loose
+     * files. Commits still in the legacy serialized format are upgraded
+     * first. A blob is stored as a delta against the previous version of
+     * its path when that is less than half its size and keeps its delta
+     * chain within MAX_DEPTH.
+     *
+     * @return number of objects packed
+     * */
+    @Override
+    public int repack() throws IOException {
+        ArrayList<Loose> objects = new ArrayList<>();
+        for (byte kind : new byte[] {COMMIT, TREE, BLOB}) {
+            List<String> loose = looseIds(kind, "");
+            Collections.sort(loose);
+            for (String id : loose) {
+                if (kind == COMMIT) {
+                    Commit.fromFile(_commits, id);
+                }
+                objects.add(new Loose(kind, id, file(kind, id)));
+            }
+        }
+        HashMap<String, Loose> blobs = new HashMap<>();
+        for (Loose object : objects) {
+            if (object._kind == BLOB) {
+                blobs.put(object._id, object);
+            }
+        }
+        HashMap<String, Integer> depths = new HashMap<>();
+        if (MAX_DEPTH > 0) {
+            for (Map.Entry<String, String> entry
+                    : previousVersions(blobs.keySet()).entrySet()) {
+                String base = entry.getValue();
+                Integer depth = depths.get(base);
+                if (depth == null) {
+                    depth = blobs.containsKey(base) ? 0 : chainDepth(base);
+                }
+                if (depth < MAX_DEPTH) {
+                    blobs.get(entry.getKey())._base = base;
+                    depths.put(entry.getKey(), depth + 1);
+                }
+            }
+        }
+        _packDir.mkdirs();
+        ArrayList<Loose> packed = new ArrayList<>();
+        int start = 0;
+        long size = PACK_HEADER.length;
+        for (Loose object : objects) {
+            long entry = ENTRY_OVERHEAD + object._file.length();
+            if (PACK_HEADER.length + entry > PACK_LIMIT) {
+                continue;
+            }
+            if (size + entry > PACK_LIMIT) {
+                writePack(packed.subList(start, packed.size()));
+                start = packed.size();
+                size = PACK_HEADER.length;
+            }
+            packed.add(object);
+            size += entry;
+        }
+        if (start < packed.size()) {
+            writePack(packed.subList(start, packed.size()));
+        }
+        loadPacks();
+        for (Loose object : packed) {
+            object._file.delete();
+            object._file.getParentFile().delete();
+        }
+        return packed.size();
+    }
+
+    /** Returns, for each blob in LOOSE that some commit introduced as
+     * a new version of a path, the blob that path held in that commit's
+     * first parent. Commits are walked oldest first and a blob is only
+     * matched the first time it appears, so no blob can end up based on
+     * itself. The result is in history order.
+     *
+     * @param loose sha1s of the blobs being packed
+     * @return blob sha1 to the sha1 of its previous version
+     * */
+    private LinkedHashMap<String, String> previousVersions(Set<String> loose) {
+        LinkedHashMap<String, String> result = new LinkedHashMap<>();
+        if (loose.isEmpty()) {
+            return result;
+        }
+        HashSet<String> seen = new HashSet<>();
+        Tree.DiffVisitor visitor = (path, oldId, newId) -> {
+            if (newId != null && seen.add(newId) && oldId != null
+                    && loose.contains(newId)) {
+                result.put(newId, oldId);
+            }
+        };
+        CommitGraph graph = CommitGraph.of(_commits.getParentFile());
+        for (int i = 0; i < graph.size(); i += 1) {
+            Commit commit = Commit.headerFromFile(_commits, graph.id(i));
+            int p = graph.parent1(i);
+            Commit parent = p < 0 ? null
+                    : Commit.headerFromFile(_commits, graph.id(p));
+            if (commit.isFlat() || parent != null && parent.isFlat()) {
+                Map<String, String> old = parent == null
+                        ? new HashMap<>() : parent.getBlobs();
+                for (Map.Entry<String, String> entry
+                        : commit.getBlobs().entrySet()) {
+                    String oldId = old.get(entry.getKey());
+                    if (!entry.getValue().equals(oldId)) {
+                        visitor.changed(entry.getKey(), oldId,
+                                entry.getValue());
+                    }
+                }
+            } else {
+                Tree.diff(this, parent == null ? null : parent.getTree(),
+                        commit.getTree(), visitor);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the number of deltas that must be applied to read the
+     * blob with sha1 ID: 0 unless it is a packed delta.
+     *
+     * @param id blob sha1
+     * @return length of its delta chain
+     * */
+    private int chainDepth(String id) {
+        int depth = 0;
+        for (Pack pack = findPacked(rawId(id)); pack != null;
+             pack = findPacked(rawId(id))) {
+            int index = pack.find(rawId(id));
+            if (!pack.isDelta(index)) {
+                break;
+            }
+            id = BinaryFormat.readId(pack.stored(index));
+            depth += 1;
+        }
+        return depth;
+    }
+
+    /** Returns the stored form of a delta entry that rebuilds the loose
+     * blob OBJECT from its base, or null if the delta would be no less
+     * than half the size of the loose file.
+     *
+     * @param object loose blob with a base
+     * @return delta entry contents, or null
+     * */
+    private byte[] deltaEntry(Loose object) throws IOException {
+        byte[] delta = Delta.create(read(BLOB, object._base),
+                read(BLOB, object._id));
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        BinaryFormat.writeId(result, object._base);
+        try (OutputStream out = encode(result)) {
+            out.write(delta);
+        }
+        if (result.size() >= object._file.length() / 2) {
+            return null;
+        }
+        return result.toByteArray();
+    }
+
+    /** Writes the loose OBJECTS to a new pack and its index, through
+     * temporary files of their own, so that processes repacking at the
+     * same time cannot overwrite each other's.
+     *
+     * @param objects loose objects to pack
+     * */
+    private void writePack(List<Loose> objects) throws IOException {
+        Path tmpPack = Files.createTempFile(_packDir.toPath(), "tmp-",
+                ".pack");
+        Path tmpIdx = Files.createTempFile(_packDir.toPath(), "tmp-",
+                ".idx");
+        try {
+            writePack(objects, tmpPack, tmpIdx);
+        } finally {
+            Files.deleteIfExists(tmpPack);
+            Files.deleteIfExists(tmpIdx);
+        }
+    }
+
+    /** Writes the loose OBJECTS to a new pack and its index, through the
+     * temporary files TMPPACK and TMPIDX, which are then renamed into
+     * place, the index last.
+     *
+     * @param objects loose objects to pack
+     * @param tmpPack temporary pack file
+     * @param tmpIdx temporary index file
+     * */
+    private void writePack(List<Loose> objects, Path tmpPack, Path tmpIdx)
+            throws IOException {
+        int count = objects.size();
+        long[] offsets = new long[count];
+        MessageDigest md = Utils.sha1Digest();
+        try (OutputStream out = new DigestOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(tmpPack)), md)) {
+            out.write(PACK_HEADER);
+            long offset = PACK_HEADER.length;
+            ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+            for (int i = 0; i < count; i += 1) {
+                Loose object = objects.get(i);
+                byte[] delta = object._base == null ? null
+                        : deltaEntry(object);
+                long length = delta == null ? object._file.length()
+                        : delta.length;
+                prefix.reset();
+                prefix.write(delta == null ? object._kind : DELTA);
+                BinaryFormat.writeVarint(prefix, length);
+                offsets[i] = offset;
+                prefix.writeTo(out);
+                if (delta == null) {
+                    Files.copy(object._file.toPath(), out);
+                } else {
+                    out.write(delta);
+                }
+                offset += prefix.size() + length;
+            }
+        }
+        Integer[] order = new Integer[count];
+        byte[][] ids = new byte[count][];
+        for (int i = 0; i < count; i += 1) {
+            order[i] = i;
+            ids[i] = rawId(objects.get(i)._id);
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(ids[a], ids[b]));
+        ByteBuffer idx = ByteBuffer.allocate(
+                IDS + count * (BinaryFormat.ID_BYTES + 9));
+        idx.put(IDX_HEADER);
+        int[] fanout = new int[FANOUT];
+        for (byte[] id : ids) {
+            fanout[id[0] & 0xFF] += 1;
+        }
+        int total = 0;
+        for (int b = 0; b < FANOUT; b += 1) {
+            total += fanout[b];
+            idx.putInt(total);
+        }
+        for (int i : order) {
+            idx.put(ids[i]);
+        }
+        for (int i : order) {
+            idx.putLong(offsets[i]);
+        }
+        for (int i : order) {
+            idx.put(objects.get(i)._kind);
+        }
+        String name = "pack-" + BinaryFormat.toHex(md.digest());
+        Files.write(tmpIdx, idx.array());
+        Files.move(tmpPack, Utils.join(_packDir, name + ".pack").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmpIdx, Utils.join(_packDir, name + ".idx").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Returns a stream of the contents of the packed object with raw
+     * ID, or null.
+     *
+     * @param id raw 20-byte object ID
+     * @return stream of the object's contents, or null
+     * */
+    private InputStream openPacked(byte[] id) throws IOException {
+        for (Pack pack : packs()) {
+            int index = pack.find(id);
+            if (index < 0) {
+                continue;
+            }
+            if (!pack.isDelta(index)) {
+                return decode(new BufferInputStream(pack.stored(index)));
+            }
+            ByteBuffer stored = pack.stored(index);
+            String base = BinaryFormat.readId(stored);
+            byte[] delta;
+            try (InputStream in = decode(new BufferInputStream(stored))) {
+                delta = in.readAllBytes();
+            }
+            return new ByteArrayInputStream(
+                    Delta.apply(deltaBase(pack.kind(index), base), delta));
+        }
+        return null;
+    }
+
+    /** Returns the contents of the object of KIND with sha1 ID, which is
+     * the base of a delta, from the cache of bases if it is there.
+     *
+     * @param kind object kind
+     * @param id object sha1
+     * @return object contents
+     * */
+    private byte[] deltaBase(byte kind, String id) {
+        synchronized (_bases) {
+            byte[] bytes = _bases.get(id);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        byte[] bytes = read(kind, id);
+        if (bytes.length > DELTA_CACHE) {
+            return bytes;
+        }
+        synchronized (_bases) {
+            if (_bases.put(id, bytes) == null) {
+                _basesSize += bytes.length;
+            }
+            Iterator<byte[]> iter = _bases.values().iterator();
+            while (_basesSize > DELTA_CACHE && iter.hasNext()) {
+                _basesSize -= iter.next().length;
+                iter.remove();
+            }
+        }
+        return bytes;
+    }
+
+    /** Returns the pack holding raw ID, or null.
+     *
+     * @param id raw 20-byte object ID
+     * @return pack holding the object, or null
+     * */
+    private Pack findPacked(byte[] id) {
+        for (Pack pack : packs()) {
+            if (pack.find(id) >= 0) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the packs currently loaded.
+     * @return packs
+     * */
+    private synchronized List<Pack> packs() {
+        return new ArrayList<>(_packs);
+    }
+
+    /** Maps every pack in the packs folder not yet loaded, including
+     * packs written since by this or another process. A pack that
+     * cannot be mapped is reported on System.err and skipped, so the
+     * objects in other packs and loose files stay readable.
+     *
+     * @return whether new packs were found
+     * */
+    private synchronized boolean loadPacks() {
+        String[] names = _packDir.list();
+        if (names == null) {
+            return false;
+        }
+        Arrays.sort(names);
+        boolean found = false;
+        for (String name : names) {
+            if (!name.startsWith("pack-") || !name.endsWith(".idx")
+                    || _packNames.contains(name)) {
+                continue;
+            }
+            String base = name.substring(0, name.length() - 4);
+            _packNames.add(name);
+            try {
+                _packs.add(new Pack(Utils.join(_packDir, base + ".pack"),
+                        Utils.join(_packDir, name)));
+                found = true;
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.println("Skipping unreadable pack " + base
+                        + ": " + excp.getMessage());
+            }
+        }
+        return found;
+    }
+
+    /** Returns the raw bytes of sha1 ID, or null if ID is not a sha1.
+     *
+     * @param id object name
+     * @return raw ID or null
+     * */
+    private static byte[] rawId(String id) {
+        try {
+            return BinaryFormat.idBytes(id);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Returns true iff NAME is the name of a shard: two lowercase hex
+     * digits.
+     *
+     * @param name file name
+     * @return whether NAME names a shard
+     * */
+    private static boolean isShard(String name) {
+        if (name.length() != SHARD) {
+            return false;
+        }
+        for (int i = 0; i < SHARD; i += 1) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** A loose object to be packed. */
+    private static class Loose {
+        /** The object of KIND with sha1 ID stored in FILE. */
+        Loose(byte kind, String id, File file) {
+            _kind = kind;
+            _id = id;
+            _file = file;
+        }
+
+        /** Object kind. */
+        private final byte _kind;
+
+        /** Object sha1. */
+        private final String _id;
+
+        /** Loose file. */
+        private final File _file;
+
+        /** Sha1 of the blob to store this one as a delta against, or
+         * null. */
+        private String _base;
+    }
+
+    /** A memory-mapped pack and its index. */
+    private static class Pack {
+        /** Maps PACK and its index IDX.
+         *
+         * @param pack pack file
+         * @param idx index file
+         * */
+        Pack(File pack, File idx) throws IOException {
+            _data = map(pack);
+            _idx = map(idx);
+            byte[] header = new byte[IDX_HEADER.length];
+            _idx.get(0, header);
+            if (!Arrays.equals(header, IDX_HEADER)) {
+                throw new IOException("bad pack index " + idx);
+            }
+            _count = _idx.getInt(IDS - 4);
+        }
+
+        /** Returns a read-only map of FILE.
+         *
+         * @param file file to map
+         * @return mapped contents
+         * */
+        private static MappedByteBuffer map(File file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath())) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        channel.size());
+            }
+        }
+
+        /** Returns the position of raw ID in the index, or -1.
+         *
+         * @param id raw 20-byte object ID
+         * @return index of ID or -1
+         * */
+        int find(byte[] id) {
+            int first = id[0] & 0xFF;
+            int lo = start(first);
+            int hi = start(first + 1) - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = compare(mid, id);
+                if (cmp < 0) {
+                    lo = mid + 1;
+                } else if (cmp > 0) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        /** Returns the position of the first ID whose first byte is at
+         * least B, from 0 to 256.
+         *
+         * @param b unsigned first byte
+         * @return position in the index
+         * */
+        int start(int b) {
+            return b == 0 ? 0
+                    : _idx.getInt(IDX_HEADER.length + (b - 1) * 4);
+        }
+
+        /** Compares the ID at INDEX with raw ID as unsigned bytes.
+         *
+         * @param index position in the index
+         * @param id raw 20-byte object ID
+         * @return comparison result
+         * */
+        private int compare(int index, byte[] id) {
+            int base = IDS + index * BinaryFormat.ID_BYTES;
+            for (int i = 0; i < BinaryFormat.ID_BYTES; i += 1) {
+                int cmp = Integer.compare(_idx.get(base + i) & 0xFF,
+                        id[i] & 0xFF);
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+
+        /** Returns the sha1 of the object at INDEX.
+         *
+         * @param index position in the index
+         * @return object sha1
+         * */
+        String id(int index) {
+            return BinaryFormat.readId(_idx.duplicate()
+                    .position(IDS + index * BinaryFormat.ID_BYTES));
+        }
+
+        /** Returns the kind of the object at INDEX.
+         *
+         * @param index position in the index
+         * @return BLOB, TREE or COMMIT
+         * */
+        byte kind(int index) {
+            return _idx.get(IDS + _count * (BinaryFormat.ID_BYTES + 8)
+                    + index);
+        }
+
+        /** Returns true iff the object at INDEX is stored as a delta.
+         *
+         * @param index position in the index
+         * @return whether it is a DELTA entry
+         * */
+        boolean isDelta(int index) {
+            return _data.get(Math.toIntExact(offset(index))) == DELTA;
+        }
+
+        /** Returns the pack offset of the object at INDEX.
+         *
+         * @param index position in the index
+         * @return offset of its entry
+         * */
+        private long offset(int index) {
+            return _idx.getLong(IDS + _count * BinaryFormat.ID_BYTES
+                    + index * 8);
+        }
+
+        /** Returns the stored bytes of the object at INDEX, without
+         * copying them out of the map.
+         *
+         * @param index position in the index
+         * @return object's stored bytes
+         * */
+        ByteBuffer stored(int index) {
+            ByteBuffer buf = _data.duplicate()
+                    .position(Math.toIntExact(offset(index)) + 1);
+            int length = BinaryFormat.readVarint32(buf);
+            return buf.slice(buf.position(), length);
+        }
+
+        /** Mapped pack file. */
+        private final MappedByteBuffer _data;
+
+        /** Mapped index file. */
+        private final MappedByteBuffer _idx;
+
+        /** Number of objects in the pack. */
+        private final int _count;
+    }
+
+    /** Writes the stored form of an object to a file. */
+    private interface StoredWriter {
+        /** Writes the stored form of an object to the new file TMP.
+         *
+         * @param tmp file to write
+         * @return false if there was nothing to write
+         * */
+        boolean write(Path tmp) throws IOException;
+    }
+
+    /** An input stream over the remaining bytes of a buffer. */
+    private static class BufferInputStream extends InputStream {
+        /** A stream of the bytes of BUF.
+         *
+         * @param buf buffer to read
+         * */
+        BufferInputStream(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return _buf.hasRemaining() ? _buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!_buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, _buf.remaining());
+            _buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return _buf.remaining();
+        }
+
+        /** Buffer being read. */
+        private final ByteBuffer _buf;
+    }
+
+    /** Registered object databases, by normalized .gitlet path. */
+    private static final HashMap<String, ObjectDatabase> _databases =
+            new HashMap<>();
+
+    /** Stores opened so far, by normalized .gitlet path. */
+    private static final HashMap<String, ObjectStore> _stores =
+            new HashMap<>();
+
+    /** Loose blobs folder. */
+    private final File _blobs;
+
+    /** Loose trees folder. */
+    private final File _trees;
+
+    /** Loose commits folder. */
+    private final File _commits;
+
+    /** Packs folder. */
+    private final File _packDir;
+
+    /** Loaded packs, oldest first. */
+    private final ArrayList<Pack> _packs;
+
+    /** Index file names of the loaded packs. */
+    private final TreeSet<String> _packNames;
+
+    /** Recently read delta bases by sha1, least recently used first. */
+    private final LinkedHashMap<String, byte[]> _bases;
+
+    /** Total size of _bases in bytes. */
+    private long _basesSize;
+}
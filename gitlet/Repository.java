@@ -0,0 +1,1743 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/** A gitlet repository: a working directory and the .gitlet folder in
+ * it. Every gitlet command is an operation on a Repository, which can
+ * be opened on any directory, so gitlet can be used from other Java
+ * code as well as from the command line. Operations print nothing:
+ * they return what they did, and report gitlet errors by throwing
+ * GitletException with the message the command line prints. Main is
+ * the command-line front end.
+ *
+ *  Repositories are cached by directory, like the object stores and
+ *  commit graphs they use, so a long-running process keeps their
+ *  working-file index, branch pointers, staging area and remotes loaded
+ *  between operations, reading each again only when another process
+ *  has written its file.
+ *  @author Wesley Zhang
+ */
+public class Repository {
+
+    /** Number of threads used to hash and store files and to write
+     * working files. Can be overridden with the gitlet.threads system
+     * property; 1 does everything on the calling thread. */
+    static final int THREADS = Integer.getInteger("gitlet.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    /** Fewest working files written in parallel; fewer are written on
+     * the calling thread. */
+    private static final int PARALLEL_MIN = 8;
+
+    /** Returns the repository whose working directory is ROOT. Throws
+     * GitletException if ROOT has no .gitlet folder.
+     *
+     * @param root working directory
+     * @return its repository
+     * */
+    public static synchronized Repository open(File root) {
+        File gitletDir = Utils.join(root, ".gitlet");
+        if (!gitletDir.isDirectory()) {
+            throw new GitletException(
+                    "Not in an initialized Gitlet directory.");
+        }
+        String key = Utils.pathKey(gitletDir);
+        Repository repo = _repositories.get(key);
+        if (repo == null) {
+            repo = new Repository(root);
+            _repositories.put(key, repo);
+        }
+        return repo;
+    }
+
+    /** Returns the repository whose working directory is ROOT, keeping
+     * its objects in OBJECTS instead of under its .gitlet folder for the
+     * rest of this process. Throws GitletException if ROOT has no .gitlet
+     * folder.
+     *
+     * @param root working directory
+     * @param objects object database to use
+     * @return its repository
+     * */
+    public static synchronized Repository open(File root,
+                                               ObjectDatabase objects) {
+        Repository repo = open(root);
+        ObjectStore.register(repo._gitletDir, objects);
+        return repo;
+    }
+
+    /** Creates a repository in ROOT, with an initial commit on branch
+     * master, and returns it. Throws GitletException if ROOT already
+     * has one.
+     *
+     * @param root working directory
+     * @return the new repository
+     * */
+    public static Repository init(File root) throws IOException {
+        return init(root, null);
+    }
+
+    /** Creates a repository in ROOT whose objects are kept in OBJECTS,
+     * or under its .gitlet folder if OBJECTS is null, and returns it.
+     * Throws GitletException if ROOT already has one.
+     *
+     * @param root working directory
+     * @param objects object database to use, or null
+     * @return the new repository
+     * */
+    public static synchronized Repository init(File root,
+            ObjectDatabase objects) throws IOException {
+        File gitletDir = Utils.join(root, ".gitlet");
+        if (gitletDir.exists()) {
+            throw new GitletException(" A Gitlet version-control "
+                    + "system already exists in the current directory.");
+        }
+        if (objects != null) {
+            ObjectStore.register(gitletDir, objects);
+        }
+        gitletDir.mkdir();
+        Utils.join(gitletDir, "commits").mkdir();
+        Utils.join(gitletDir, "blobs").mkdir();
+        Utils.join(gitletDir, "trees").mkdir();
+        Repository repo = new Repository(root);
+        repo._stagingFile.createNewFile();
+        new StagingArea().save(repo._stagingFile);
+        repo._pointerFile.createNewFile();
+        repo._remoteFile.createNewFile();
+        Utils.writeObject(repo._remoteFile, new Remote());
+        Commit init = new Commit("initial commit", null, repo.store());
+        init.setTime(0);
+        String code = init.commitSha1();
+        init.saveCommit(repo._commits, code);
+        repo.graph().add(code, init);
+        MessageIndex.of(gitletDir).update();
+        Pointer pointer = new Pointer();
+        pointer.getHead().put("*", code);
+        pointer.getHeadname().put("*", "master");
+        pointer.getBranches().put("master", code);
+        Utils.writeObject(repo._pointerFile, pointer);
+        _repositories.put(Utils.pathKey(gitletDir), repo);
+        return repo;
+    }
+
+    /** The repository whose working directory is ROOT.
+     *
+     * @param root working directory
+     * */
+    private Repository(File root) {
+        _root = root;
+        _gitletDir = Utils.join(root, ".gitlet");
+        _commits = Utils.join(_gitletDir, "commits");
+        _stagingFile = Utils.join(_gitletDir, "staging");
+        _pointerFile = Utils.join(_gitletDir, "pointer");
+        _remoteFile = Utils.join(_gitletDir, "remote");
+        _indexFile = Utils.join(_gitletDir, "index");
+        File blobs = Utils.join(_gitletDir, "blobs");
+        _pointer = new Cached<>(_pointerFile,
+                file -> Utils.readObject(file, Pointer.class),
+                Repository::copy);
+        _staging = new Cached<>(_stagingFile,
+                file -> StagingArea.load(file, blobs), StagingArea::copy);
+        _remote = new Cached<>(_remoteFile,
+                file -> Utils.readObject(file, Remote.class),
+                Repository::copy);
+    }
+
+    /** Returns the working directory.
+     * @return working directory
+     * */
+    public File root() {
+        return _root;
+    }
+
+    /** Returns the .gitlet folder.
+     * @return metadata folder
+     * */
+    public File gitletDir() {
+        return _gitletDir;
+    }
+
+    /** Adds the files named by PATHS to the staging area, writing the
+     * blob of any contents seen for the first time. Each path may be a
+     * file, a directory (added recursively) or a glob matched against
+     * every working file. Files are hashed and stored in parallel, and
+     * the staging area is written once at the end.
+     *
+     * @param paths files, directories and globs to add
+     * @return names of the files added
+     * */
+    public List<String> add(String... paths) {
+        if (paths.length == 0) {
+            throw new GitletException("Incorrect operands.");
+        }
+        List<String> names = expandPaths(paths);
+        StagingArea staging = staging();
+        SortedMap<String, String> blobs = head().getBlobs();
+        SortedSet<String> removed = staging.getRemove();
+        WorkingIndex index = index();
+        String[] ids = inParallel(() -> names.parallelStream()
+                .map(name -> removed.contains(name) ? ""
+                        : storeBlob(name, blobs.get(name), index))
+                .toArray(String[]::new));
+        for (String id : ids) {
+            if (id == null) {
+                throw new GitletException("File does not exist.");
+            }
+        }
+        for (int i = 0; i < ids.length; i += 1) {
+            String fileName = names.get(i);
+            if (removed.contains(fileName)) {
+                staging.unstageRemoval(fileName);
+            } else if (ids[i].equals(blobs.get(fileName))) {
+                staging.unstage(fileName);
+            } else {
+                staging.stage(fileName, ids[i]);
+            }
+        }
+        save(staging);
+        index.save();
+        return names;
+    }
+
+    /** Unstages the file FILENAME if it is staged for addition, and
+     * otherwise stages it for removal and deletes it if the head commit
+     * tracks it.
+     *
+     * @param fileName file's name
+     * */
+    public void remove(String fileName) {
+        StagingArea staging = staging();
+        SortedMap<String, String> add = staging.getAdd();
+        if (add.containsKey(fileName)) {
+            staging.unstage(fileName);
+            save(staging);
+        } else {
+            SortedMap<String, String> blobs = head().getBlobs();
+            if (blobs.containsKey(fileName)) {
+                staging.stageRemoval(fileName);
+                deleteWorkingFile(fileName);
+            }
+            if (!add.containsKey(fileName) && !blobs.containsKey(fileName)) {
+                throw new GitletException("No reason to remove the file.");
+            }
+            save(staging);
+        }
+    }
+
+    /** Commits the staged changes on the current branch.
+     *
+     * @param message Commit's message
+     * @return the new commit
+     * */
+    public CommitInfo commit(String message) throws IOException {
+        StagingArea staging = staging();
+        if (staging.isEmpty()) {
+            throw new GitletException("No changes added to the commit.");
+        }
+        if (message.equals("")) {
+            throw new GitletException("Please enter a commit message.");
+        }
+        Pointer pointer = pointer();
+        Commit parent = Commit.fromFile(_commits, pointer.getHead().get("*"));
+        String tree = Tree.update(store(), parent.getTree(),
+                staging.getAdd(), staging.getRemove());
+        staging.clear();
+        save(staging);
+        return record(message, null, tree, pointer);
+    }
+
+    /** Makes a commit with MESSAGE and root tree TREE on top of the head
+     * in POINTER, with second parent PARENT2 unless it is null, and
+     * moves the head and the current branch to it.
+     *
+     * @param message Commit's message
+     * @param parent2 Commit's second parent, or null
+     * @param tree root tree sha1
+     * @param pointer branches and head
+     * @return the new commit
+     * */
+    private CommitInfo record(String message, String parent2, String tree,
+                              Pointer pointer) throws IOException {
+        Commit current = new Commit(message, pointer.getHead().get("*"),
+                store());
+        if (parent2 != null) {
+            current.setParent2(parent2);
+        }
+        current.setTree(tree);
+        String code = current.commitSha1();
+        current.saveCommit(_commits, code);
+        graph().add(code, current);
+        MessageIndex.of(_gitletDir).update();
+        pointer.getHead().replace("*", code);
+        pointer.getBranches().replace(pointer.getHeadname().get("*"), code);
+        save(pointer);
+        return new CommitInfo(code, current.getTime(), message);
+    }
+
+    /** Returns the history of the head commit, newest first, following
+     * first parents through the commit graph. A head missing from the
+     * graph is added to it first, with its missing ancestors. Messages
+     * are read as the iterator reaches them.
+     *
+     * @return commits from the head back to the initial commit
+     * */
+    public Iterator<CommitInfo> log() {
+        CommitGraph graph = graph();
+        int start = graph.addWithAncestors(pointer().getHead().get("*"));
+        return Stream.iterate(start, i -> i >= 0, graph::parent1)
+                .map(i -> {
+                    String id = graph.id(i);
+                    return new CommitInfo(id, graph.time(i),
+                            Commit.headerFromFile(_commits, id)
+                                    .getMessage());
+                })
+                .iterator();
+    }
+
+    /** Returns every commit ever made, in no particular order.
+     *
+     * @return all commits
+     * */
+    public Iterator<CommitInfo> globalLog() {
+        return store().list(ObjectStore.COMMIT).stream()
+                .map(this::info)
+                .iterator();
+    }
+
+    /** Returns the IDs of all commits whose message is MESSAGE, sorted.
+     *
+     * @param message commit message
+     * @return matching commit IDs
+     * */
+    public List<String> find(String message) {
+        return find(MessageIndex.of(_gitletDir).withMessage(message),
+                m -> m.equals(message));
+    }
+
+    /** Returns the IDs of all commits whose message has the word WORD in
+     * any case, sorted. Every commit is read unless the token index
+     * exists.
+     *
+     * @param word word to look for
+     * @return matching commit IDs
+     * */
+    public List<String> findWord(String word) {
+        String lower = word.toLowerCase(Locale.ROOT);
+        return find(MessageIndex.of(_gitletDir).withWord(word),
+                m -> MessageIndex.words(m).contains(lower));
+    }
+
+    /** Returns the IDs of all commits whose message contains TEXT,
+     * sorted. Every commit is read unless the token index exists.
+     *
+     * @param text text to look for
+     * @return matching commit IDs
+     * */
+    public List<String> findSubstring(String text) {
+        return find(MessageIndex.of(_gitletDir).withSubstring(text),
+                m -> m.contains(text));
+    }
+
+    /** Returns the IDs of the commits among CANDIDATES, or among all
+     * commits if it is null, whose message MATCHES, sorted.
+     *
+     * @param candidates commits the message index offers, or null
+     * @param matches test of a commit message
+     * @return matching commit IDs
+     * */
+    private List<String> find(Collection<String> candidates,
+                              Predicate<String> matches) {
+        if (candidates == null) {
+            candidates = store().list(ObjectStore.COMMIT);
+        }
+        ArrayList<String> result = new ArrayList<>();
+        for (String commit : new TreeSet<>(candidates)) {
+            Commit current = Commit.headerFromFile(_commits, commit);
+            if (matches.test(current.getMessage())) {
+                result.add(commit);
+            }
+        }
+        return result;
+    }
+
+    /** Rewrites the message index, and with TOKENS also the token index
+     * for word and substring searches.
+     *
+     * @param tokens whether to build the token index
+     * */
+    public void reindex(boolean tokens) {
+        MessageIndex.of(_gitletDir).rebuild(tokens);
+    }
+
+    /** Packs the loose objects of this repository, if its object
+     * database keeps loose objects. */
+    public void repack() throws IOException {
+        store().repack();
+    }
+
+    /** Returns the branches, the staging area and the state of the
+     * working files. Working files are compared with the commit and the
+     * staging area by hash, using the working index to avoid rereading
+     * unchanged files.
+     *
+     * @return status
+     * */
+    public Status status() {
+        Pointer pointer = pointer();
+        StagingArea staging = staging();
+        SortedMap<String, String> add = staging.getAdd();
+        SortedSet<String> remove = staging.getRemove();
+        Status status = new Status(pointer.getHeadname().get("*"));
+        status._branches.addAll(pointer.getBranches().keySet());
+        status._staged.addAll(add.keySet());
+        status._removed.addAll(remove);
+        List<String> cwdFiles = workingFiles(_root);
+        SortedMap<String, String> blobs = head().getBlobs();
+        for (String fileName : blobs.keySet()) {
+            File file = Utils.join(_root, fileName);
+            if (!file.exists() && !remove.contains(fileName)) {
+                status._deleted.add(fileName);
+            }
+        }
+        WorkingIndex index = index();
+        for (String fileName : cwdFiles) {
+            if (blobs.containsKey(fileName) && !add.containsKey(fileName)) {
+                if (!blobs.get(fileName).equals(index.hash(fileName))) {
+                    status._modified.add(fileName);
+                }
+            } else if (add.containsKey(fileName)
+                    && !add.get(fileName).equals(index.hash(fileName))) {
+                status._modified.add(fileName);
+            }
+            if ((!blobs.containsKey(fileName) && !add.containsKey(fileName))
+                    || remove.contains(fileName)) {
+                status._untracked.add(fileName);
+            }
+        }
+        index.save();
+        return status;
+    }
+
+    /** Creates a new branch with the given name,
+     * and points it at the current head node.
+     *
+     * @param name branch name
+     * */
+    public void branch(String name) {
+        Pointer pointer = pointer();
+        TreeMap<String, String> branches = pointer.getBranches();
+        if (branches.containsKey(name)) {
+            throw new GitletException(
+                    "A branch with that name already exists.");
+        }
+        branches.put(name, pointer.getHead().get("*"));
+        save(pointer);
+    }
+
+    /** Deletes the branch with the given name.
+     *
+     * @param name branch name
+     * */
+    public void removeBranch(String name) {
+        Pointer pointer = pointer();
+        TreeMap<String, String> branches = pointer.getBranches();
+        String currBranchName = pointer.getHeadname().get("*");
+        if (!branches.containsKey(name)) {
+            throw new GitletException(
+                    "A branch with that name does not exist.");
+        } else if (currBranchName.equals(name)) {
+            throw new GitletException("Cannot remove the current branch.");
+        }
+        branches.remove(name);
+        save(pointer);
+    }
+
+    /** Restores working file FILENAME to its version in the head
+     * commit.
+     *
+     * @param fileName file name
+     * @return the file written
+     * */
+    public CheckoutResult checkoutFile(String fileName) {
+        return checkoutFile(pointer().getHead().get("*"), fileName);
+    }
+
+    /** Restores working file FILENAME to its version in commit ID, which
+     * may be abbreviated.
+     *
+     * @param id commit sha1 or an abbreviation of it
+     * @param fileName file name
+     * @return the file written
+     * */
+    public CheckoutResult checkoutFile(String id, String fileName) {
+        id = resolveCommit(id);
+        if (!store().has(ObjectStore.COMMIT, id)) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        SortedMap<String, String> blobs =
+                Commit.fromFile(_commits, id).getBlobs();
+        if (!blobs.containsKey(fileName)) {
+            throw new GitletException("File does not exist in that commit.");
+        }
+        CheckoutResult result = new CheckoutResult(id);
+        writeWorkingFile(fileName, blobs.get(fileName), index());
+        result._written.add(fileName);
+        saveIndex();
+        return result;
+    }
+
+    /** Checks out branch NAME and makes it the current branch. Only the
+     * files that differ between the current commit and the branch's
+     * head are written or deleted.
+     *
+     * @param name branch name
+     * @return the files written and deleted
+     * */
+    public CheckoutResult checkoutBranch(String name) {
+        Pointer pointer = pointer();
+        StagingArea staging = staging();
+        TreeMap<String, String> branches = pointer.getBranches();
+        TreeMap<String, String> headName = pointer.getHeadname();
+        TreeMap<String, String> head = pointer.getHead();
+        String currBranchName = headName.get("*");
+        if (!branches.containsKey(name)) {
+            throw new GitletException("No such branch exists.");
+        } else if (currBranchName.equals(name)) {
+            throw new GitletException(
+                    "No need to checkout the current branch.");
+        }
+        String branchCode = branches.get(name);
+        CheckoutResult result = switchTo(head(), branchCode, false);
+        staging.clear();
+        headName.replace("*", name);
+        head.replace("*", branchCode);
+        save(staging);
+        save(pointer);
+        saveIndex();
+        return result;
+    }
+
+    /** Checks out all the files tracked by the given commit.
+     * Removes tracked files that are not present in that commit.
+     * Also moves the current branch's head to that commit node. Only
+     * the files that differ between the current and given commits, and
+     * tracked files changed in the working directory, are written or
+     * deleted.
+     *
+     * @param id Commit id, which may be abbreviated
+     * @return the files written and deleted
+     */
+    public CheckoutResult reset(String id) {
+        id = resolveCommit(id);
+        if (!store().has(ObjectStore.COMMIT, id)) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        Pointer pointer = pointer();
+        StagingArea staging = staging();
+        TreeMap<String, String> headName = pointer.getHeadname();
+        TreeMap<String, String> head = pointer.getHead();
+        TreeMap<String, String> branches = pointer.getBranches();
+        CheckoutResult result = switchTo(head(), id, true);
+        String currBranchName = headName.get("*");
+        head.replace("*", id);
+        branches.replace(currBranchName, id);
+        staging.clear();
+        save(staging);
+        save(pointer);
+        saveIndex();
+        return result;
+    }
+
+    /** Makes the working files those of commit ID instead of those of
+     * commit CURRENT. The two commits' trees are diffed, so only the
+     * files that differ between them are written or deleted, and
+     * subtrees they share are never read. With RESTORE, tracked files
+     * of commit ID that were changed or deleted in the working directory
+     * are written too. Throws GitletException, before changing anything,
+     * if a file untracked by CURRENT is in the way of a file of ID.
+     *
+     * @param current commit the working files now come from
+     * @param id sha1 of the commit to switch to
+     * @param restore whether to undo changes to unchanged files
+     * @return the files written and deleted
+     * */
+    private CheckoutResult switchTo(Commit current, String id,
+                                    boolean restore) {
+        Commit target = Commit.fromFile(_commits, id);
+        TreeMap<String, String> changes = new TreeMap<>();
+        ArrayList<String> untracked = new ArrayList<>();
+        Tree.diff(store(), current.getTree(), target.getTree(),
+            (fileName, oldId, newId) -> {
+                changes.put(fileName, newId);
+                if (oldId == null) {
+                    untracked.add(fileName);
+                }
+            });
+        WorkingIndex index = index();
+        for (String fileName : untracked) {
+            String sha1 = index.hash(fileName);
+            if (sha1 != null && !sha1.equals(changes.get(fileName))) {
+                throw new GitletException("There is an untracked file "
+                        + "in the way; delete it, or add and commit it "
+                        + "first.");
+            }
+        }
+        if (restore) {
+            for (Map.Entry<String, String> entry
+                     : target.getBlobs().entrySet()) {
+                String fileName = entry.getKey();
+                if (!changes.containsKey(fileName)
+                        && !entry.getValue().equals(index.hash(fileName))) {
+                    changes.put(fileName, entry.getValue());
+                }
+            }
+        }
+        CheckoutResult result = new CheckoutResult(id);
+        TreeMap<String, String> writes = new TreeMap<>();
+        for (Map.Entry<String, String> entry : changes.entrySet()) {
+            if (entry.getValue() == null) {
+                deleteWorkingFile(entry.getKey());
+                result._deleted.add(entry.getKey());
+            } else {
+                writes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        writeWorkingFiles(writes);
+        result._written.addAll(writes.keySet());
+        return result;
+    }
+
+    /** Writes the blob of each entry of FILES, a map from working file
+     * name to blob ID, to its file. Large batches are written on THREADS
+     * threads, each file streamed from the object database. Every file
+     * is attempted even if some fail; the error of the first failed
+     * file in name order is then thrown, so which error is reported
+     * does not depend on how the writes were scheduled.
+     *
+     * @param files blob IDs by file name
+     * */
+    private void writeWorkingFiles(SortedMap<String, String> files) {
+        String[] names = files.keySet().toArray(new String[0]);
+        String[] ids = files.values().toArray(new String[0]);
+        RuntimeException[] errors = new RuntimeException[names.length];
+        WorkingIndex index = index();
+        IntConsumer write = i -> {
+            try {
+                writeWorkingFile(names[i], ids[i], index);
+            } catch (RuntimeException excp) {
+                errors[i] = excp;
+            }
+        };
+        if (THREADS > 1 && names.length >= PARALLEL_MIN) {
+            inParallel(() -> {
+                IntStream.range(0, names.length).parallel().forEach(write);
+                return null;
+            });
+        } else {
+            IntStream.range(0, names.length).forEach(write);
+        }
+        for (RuntimeException excp : errors) {
+            if (excp != null) {
+                throw excp;
+            }
+        }
+    }
+
+    /** Merges the given branch into the current branch.
+     *
+     * @param branch given branch
+     * @return what the merge did
+     * */
+    public MergeResult merge(String branch) throws IOException {
+        StagingArea staging = staging();
+        if (!staging.isEmpty()) {
+            throw new GitletException("You have uncommitted changes.");
+        }
+        Pointer pointer = pointer();
+        TreeMap<String, String> branches = pointer.getBranches();
+        String branchSha1 = branches.get(branch);
+        if (branchSha1 == null) {
+            throw new GitletException(
+                    "A branch with that name does not exist.");
+        }
+        String currBranch = pointer.getHeadname().get("*");
+        if (currBranch.equals(branch)) {
+            throw new GitletException("Cannot merge a branch with itself.");
+        }
+        String splitSha1 = findSplit(branch);
+        if (splitSha1.equals(branchSha1)) {
+            return new MergeResult(MergeResult.Kind.ANCESTOR, null, false);
+        }
+        String currSha1 = pointer.getHead().get("*");
+        if (currSha1.equals(splitSha1)) {
+            switchTo(Commit.fromFile(_commits, currSha1), branchSha1, false);
+            pointer.getHead().replace("*", branchSha1);
+            branches.replace(currBranch, branchSha1);
+            save(pointer);
+            saveIndex();
+            return new MergeResult(MergeResult.Kind.FAST_FORWARD,
+                    info(branchSha1), false);
+        }
+        Commit current = Commit.fromFile(_commits, currSha1);
+        TreeMap<String, String> take = new TreeMap<>();
+        TreeSet<String> drop = new TreeSet<>();
+        TreeMap<String, String[]> both = new TreeMap<>();
+        threeWay(Commit.fromFile(_commits, splitSha1), current,
+                Commit.fromFile(_commits, branchSha1), take, drop, both);
+        if (take.isEmpty() && drop.isEmpty() && both.isEmpty()) {
+            throw new GitletException("No changes added to the commit.");
+        }
+        TreeMap<String, String> add = new TreeMap<>(take);
+        ArrayList<String> conflicts = new ArrayList<>();
+        WorkingIndex index = index();
+        for (Map.Entry<String, String[]> entry : both.entrySet()) {
+            add.put(entry.getKey(), writeMerged(entry.getKey(),
+                    entry.getValue(), conflicts, index));
+        }
+        for (String fileName : drop) {
+            deleteWorkingFile(fileName);
+        }
+        writeWorkingFiles(take);
+        String tree = Tree.update(store(), current.getTree(), add, drop);
+        CommitInfo merged = record("Merged " + branch + " into "
+                + currBranch + ".", branchSha1, tree, pointer);
+        saveIndex();
+        return new MergeResult(MergeResult.Kind.MERGED, merged,
+                !conflicts.isEmpty());
+    }
+
+    /** Returns the split point of the current head and BRANCH: their
+     * best common ancestor. In a criss-cross history with several equally
+     * good ones, the one with the highest generation is used.
+     * @param branch given branch
+     * @return split point sha1
+     * */
+    private String findSplit(String branch) {
+        Pointer pointer = pointer();
+        List<String> bases = MergeBase.bases(graph(),
+                pointer.getHead().get("*"),
+                pointer.getBranches().get(branch));
+        return bases.isEmpty() ? "" : bases.get(0);
+    }
+
+    /** Decides the merge of every file that differs between the split
+     * point SPLIT and either CURRENT or GIVEN, walking the two sorted
+     * tree diffs together so that subtrees unchanged on both sides are
+     * never read. Files the merge takes from GIVEN go into TAKE, files
+     * it deletes into DROP, and files changed differently on both sides
+     * into BOTH with their split point, current and given blobs (null if
+     * absent). Throws GitletException, before anything is written, if
+     * the merge would overwrite a working file CURRENT does not track.
+     *
+     * @param split split point commit
+     * @param current current commit
+     * @param given given commit
+     * @param take given blobs to write, by file name
+     * @param drop names of files to delete
+     * @param both split, current and given blobs of files changed on
+     *             both sides
+     */
+    private void threeWay(Commit split, Commit current, Commit given,
+                          SortedMap<String, String> take,
+                          SortedSet<String> drop,
+                          SortedMap<String, String[]> both) {
+        TreeMap<String, String> splitBlobs = new TreeMap<>();
+        TreeMap<String, String> currBlobs = new TreeMap<>();
+        TreeMap<String, String> givenBlobs = new TreeMap<>();
+        Tree.diff(store(), split.getTree(), current.getTree(),
+            (path, oldId, newId) -> {
+                splitBlobs.put(path, oldId);
+                currBlobs.put(path, newId);
+            });
+        Tree.diff(store(), split.getTree(), given.getTree(),
+            (path, oldId, newId) -> {
+                splitBlobs.put(path, oldId);
+                givenBlobs.put(path, newId);
+            });
+        WorkingIndex index = index();
+        for (Map.Entry<String, String> entry : splitBlobs.entrySet()) {
+            String fileName = entry.getKey();
+            String sFile = entry.getValue();
+            String cFile = currBlobs.getOrDefault(fileName, sFile);
+            String gFile = givenBlobs.getOrDefault(fileName, sFile);
+            if (Objects.equals(cFile, gFile)
+                    || Objects.equals(gFile, sFile)) {
+                continue;
+            }
+            boolean taken = Objects.equals(cFile, sFile);
+            if (cFile == null) {
+                String sha1 = index.hash(fileName);
+                if (sha1 != null && !(taken && sha1.equals(gFile))) {
+                    throw new GitletException("There is an untracked file "
+                            + "in the way; delete it, or add and commit it "
+                            + "first.");
+                }
+            }
+            if (!taken) {
+                both.put(fileName, new String[] {sFile, cFile, gFile});
+            } else if (gFile == null) {
+                drop.add(fileName);
+            } else {
+                take.put(fileName, gFile);
+            }
+        }
+    }
+
+    /** Writes working file NAME as the merge of the blobs BLOBS, the
+     * versions of the file at the split point, in the current commit and
+     * in the given commit, any of which may be null for an absent file,
+     * and stores the result as a blob. Text changed on both sides is
+     * merged line by line with Diff3; if a side deleted the file, or any
+     * version is binary or very large, the whole of both versions
+     * becomes one conflict, streamed from the blobs. NAME is added to
+     * CONFLICTS if the result has conflicts. The output is hashed as it
+     * is written.
+     *
+     * @param name file name
+     * @param blobs split, current and given blob sha1s, or nulls
+     * @param conflicts names of conflicted files
+     * @param index working index
+     * @return sha1 of the written file
+     */
+    private String writeMerged(String name, String[] blobs,
+                               List<String> conflicts, WorkingIndex index) {
+        File file = Utils.join(_root, name);
+        file.getParentFile().mkdirs();
+        MessageDigest digest = Utils.sha1Digest();
+        try (OutputStream out = new DigestOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(file.toPath())), digest)) {
+            byte[][] texts = blobs[1] == null || blobs[2] == null
+                ? null : readTexts(blobs);
+            if (texts == null) {
+                out.write(Diff3.CONFLICT_START);
+                copyBlob(blobs[1], out);
+                out.write(Diff3.CONFLICT_MIDDLE);
+                copyBlob(blobs[2], out);
+                out.write(Diff3.CONFLICT_END);
+                conflicts.add(name);
+            } else if (Diff3.merge(texts[0], texts[1], texts[2], out)) {
+                conflicts.add(name);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String id = BinaryFormat.toHex(digest.digest());
+        store().writeFile(ObjectStore.BLOB, id, file);
+        index.record(name, id);
+        return id;
+    }
+
+    /** Returns the contents of the blobs IDS, with an empty file for
+     * each null, or null if any of them cannot be merged as text.
+     *
+     * @param ids blob sha1s, or nulls
+     * @return contents of each blob, or null
+     * */
+    private byte[][] readTexts(String[] ids) throws IOException {
+        byte[][] texts = new byte[ids.length][];
+        for (int i = 0; i < ids.length; i += 1) {
+            if (ids[i] == null) {
+                texts[i] = new byte[0];
+                continue;
+            }
+            try (InputStream in = store().open(ObjectStore.BLOB, ids[i])) {
+                texts[i] = Diff3.text(in);
+            }
+            if (texts[i] == null) {
+                return null;
+            }
+        }
+        return texts;
+    }
+
+    /** Copies the contents of blob ID, if it is not null, to OUT.
+     *
+     * @param id blob sha1, or null
+     * @param out stream to copy to
+     * */
+    private void copyBlob(String id, OutputStream out) throws IOException {
+        if (id != null) {
+            try (InputStream in = store().open(ObjectStore.BLOB, id)) {
+                in.transferTo(out);
+            }
+        }
+    }
+
+    /** Adds a remote named NAME whose .gitlet folder is DIR.
+     *
+     * @param name remote name
+     * @param dir remote .gitlet folder
+     * */
+    public void addRemote(String name, String dir) {
+        Remote remote = _remote.get();
+        TreeMap<String, String> remotes = remote.getRemote();
+        if (remotes.containsKey(name)) {
+            throw new GitletException(
+                    "A remote with that name already exists.");
+        }
+        remotes.put(name, dir);
+        save(remote);
+    }
+
+    /** Removes the remote named NAME.
+     *
+     * @param name remote name
+     * */
+    public void removeRemote(String name) {
+        Remote remote = _remote.get();
+        TreeMap<String, String> remotes = remote.getRemote();
+        if (!remotes.containsKey(name)) {
+            throw new GitletException(
+                    "A remote with that name does not exist.");
+        }
+        remotes.remove(name);
+        save(remote);
+    }
+
+    /** Copies every commit reachable from the current head that branch
+     * BRANCH of remote NAME is missing, with their trees and blobs, and
+     * moves that branch to the head.
+     *
+     * @param name remote name
+     * @param branch remote branch
+     * */
+    public void push(String name, String branch) {
+        File remoteDir = remoteDir(name);
+        File rPointerFile = Utils.join(remoteDir, "pointer");
+        Pointer remotePointer = Utils.readObject(rPointerFile, Pointer.class);
+        Pointer pointer = pointer();
+        String currSha1 = pointer.getBranches()
+                .get(pointer.getHeadname().get("*"));
+        TreeMap<String, String> rBranches = remotePointer.getBranches();
+        String remoteCommit = rBranches.get(branch);
+        CommitGraph graph = graph();
+        if (remoteCommit != null && !graph.isAncestor(remoteCommit, currSha1)) {
+            throw new GitletException(
+                    "Please pull down remote changes before pushing.");
+        }
+        CommitGraph rGraph = CommitGraph.of(remoteDir);
+        copyCommits(graph.missing(currSha1, rGraph::contains),
+                store(), ObjectStore.database(remoteDir), rGraph);
+        MessageIndex.of(remoteDir).update();
+        rBranches.put(branch, currSha1);
+        remotePointer.getHead().replace("*", currSha1);
+        Utils.writeObject(rPointerFile, remotePointer);
+    }
+
+    /** Copies every commit reachable from branch BRANCH of remote NAME
+     * that this repository is missing, with their trees and blobs, and
+     * points the branch NAME/BRANCH at it.
+     *
+     * @param name remote name
+     * @param branch remote branch
+     * */
+    public void fetch(String name, String branch) {
+        File remoteDir = remoteDir(name);
+        Pointer remotePointer = Utils.readObject(
+                Utils.join(remoteDir, "pointer"), Pointer.class);
+        TreeMap<String, String> branches = remotePointer.getBranches();
+        if (!branches.containsKey(branch)) {
+            throw new GitletException(
+                    "That remote does not have that branch.");
+        }
+        String remoteBranch = branches.get(branch);
+        CommitGraph rGraph = CommitGraph.of(remoteDir);
+        CommitGraph graph = graph();
+        copyCommits(rGraph.missing(remoteBranch, graph::contains),
+                ObjectStore.database(remoteDir), store(), graph);
+        MessageIndex.of(_gitletDir).update();
+        Pointer pointer = pointer();
+        pointer.getBranches().put(name + "/" + branch, remoteBranch);
+        save(pointer);
+    }
+
+    /** Fetches branch BRANCH of remote NAME and merges it into the
+     * current branch.
+     *
+     * @param name remote name
+     * @param branch remote branch
+     * @return what the merge did
+     * */
+    public MergeResult pull(String name, String branch) throws IOException {
+        fetch(name, branch);
+        return merge(name + "/" + branch);
+    }
+
+    /** Returns the .gitlet folder of the remote named NAME.
+     *
+     * @param name remote name
+     * @return remote .gitlet folder
+     * */
+    private File remoteDir(String name) {
+        Remote remote = _remote.get();
+        File dir = new File(remote.getRemote().get(name));
+        if (!dir.exists()) {
+            throw new GitletException("Remote directory not found.");
+        }
+        return dir;
+    }
+
+    /** Copies the commits IDS, ordered parents first, and any of their
+     * trees and blobs the destination lacks, from the object database
+     * FROM to the database TO of another repository. Objects are copied byte
+     * for byte, wherever they are stored.
+     *
+     * @param ids commits to copy
+     * @param from source object database
+     * @param to destination object database
+     * @param toGraph destination commit graph
+     * */
+    private static void copyCommits(List<String> ids, ObjectDatabase from,
+            ObjectDatabase to, CommitGraph toGraph) {
+        for (String id : ids) {
+            Commit commit = Commit.read(from, id);
+            if (commit.isFlat()) {
+                for (String sha1 : commit.getBlobs().values()) {
+                    copyObject(from, to, ObjectStore.BLOB, sha1);
+                }
+            } else {
+                copyTree(commit.getTree(), from, to);
+            }
+            copyObject(from, to, ObjectStore.COMMIT, id);
+            toGraph.add(id, commit);
+        }
+    }
+
+    /** Copies tree ID and everything under it that the store TO lacks
+     * from the store FROM. A tree is only ever written after its
+     * contents, so a tree TO already has is skipped without being read.
+     *
+     * @param id tree sha1
+     * @param from source object database
+     * @param to destination object database
+     * */
+    private static void copyTree(String id, ObjectDatabase from,
+                                 ObjectDatabase to) {
+        if (to.has(ObjectStore.TREE, id)) {
+            return;
+        }
+        Tree tree = Tree.read(from, id);
+        for (String sha1 : tree.getFiles().values()) {
+            copyObject(from, to, ObjectStore.BLOB, sha1);
+        }
+        for (String sha1 : tree.getDirs().values()) {
+            copyTree(sha1, from, to);
+        }
+        copyObject(from, to, ObjectStore.TREE, id);
+    }
+
+    /** Copies the object of KIND with sha1 ID from the database FROM to
+     * the database TO unless TO already has it.
+     *
+     * @param from source object database
+     * @param to destination object database
+     * @param kind object kind
+     * @param id object sha1
+     * */
+    private static void copyObject(ObjectDatabase from, ObjectDatabase to,
+                                   byte kind, String id) {
+        to.copyFrom(from, kind, id);
+    }
+
+    /** Returns the full commit ID abbreviated by ID, which may be any
+     * prefix of at least CommitIdIndex.MIN_PREFIX characters. Throws
+     * GitletException if more than one commit matches. An ID that
+     * matches no commit is returned unchanged.
+     *
+     * @param id commit sha1 or an abbreviation of it
+     * @return full commit sha1
+     * */
+    public String resolveCommit(String id) {
+        if (id.length() < CommitIdIndex.MIN_PREFIX
+                || id.length() >= 2 * BinaryFormat.ID_BYTES) {
+            return id;
+        }
+        List<String> matches =
+                CommitIdIndex.of(_gitletDir).matching(id, 2);
+        if (matches.size() > 1) {
+            throw new GitletException("Commit id " + id + " is ambiguous.");
+        }
+        return matches.isEmpty() ? id : matches.get(0);
+    }
+
+    /** Returns the header of commit ID.
+     *
+     * @param id commit sha1
+     * @return its ID, time and message
+     * */
+    private CommitInfo info(String id) {
+        Commit commit = Commit.headerFromFile(_commits, id);
+        return new CommitInfo(id, commit.getTime(), commit.getMessage());
+    }
+
+    /** Returns the head commit.
+     * @return head commit
+     * */
+    private Commit head() {
+        return Commit.fromFile(_commits, pointer().getHead().get("*"));
+    }
+
+    /** Returns a copy of the branch pointers.
+     * @return pointers
+     * */
+    private Pointer pointer() {
+        return _pointer.get();
+    }
+
+    /** Writes POINTER as the branch pointers.
+     * @param pointer pointers
+     * */
+    private void save(Pointer pointer) {
+        Utils.writeObject(_pointerFile, pointer);
+        _pointer.saved(pointer);
+    }
+
+    /** Returns a copy of the staging area.
+     * @return staging area
+     * */
+    private StagingArea staging() {
+        return _staging.get();
+    }
+
+    /** Saves STAGING as the staging area.
+     * @param staging staging area
+     * */
+    private void save(StagingArea staging) {
+        staging.save();
+        _staging.saved(staging);
+    }
+
+    /** Writes REMOTE as the remotes.
+     * @param remote remotes
+     * */
+    private void save(Remote remote) {
+        Utils.writeObject(_remoteFile, remote);
+        _remote.saved(remote);
+    }
+
+    /** Returns a copy of POINTER.
+     * @param pointer pointers
+     * @return copy
+     * */
+    private static Pointer copy(Pointer pointer) {
+        Pointer copy = new Pointer();
+        copy.getHead().putAll(pointer.getHead());
+        copy.getHeadname().putAll(pointer.getHeadname());
+        copy.getBranches().putAll(pointer.getBranches());
+        return copy;
+    }
+
+    /** Returns a copy of REMOTE.
+     * @param remote remotes
+     * @return copy
+     * */
+    private static Remote copy(Remote remote) {
+        Remote copy = new Remote();
+        copy.getRemote().putAll(remote.getRemote());
+        return copy;
+    }
+
+    /** Returns the object database of this repository.
+     * @return object database
+     * */
+    ObjectDatabase store() {
+        return ObjectStore.database(_gitletDir);
+    }
+
+    /** Returns the commit graph of this repository.
+     * @return commit graph
+     * */
+    CommitGraph graph() {
+        return CommitGraph.of(_gitletDir);
+    }
+
+    /** Returns the working-file index, loading it on first use or when
+     * another process has written it since.
+     * @return working index
+     * */
+    private WorkingIndex index() {
+        if (_index == null || !_index.isCurrent()) {
+            _index = WorkingIndex.load(_indexFile, _root);
+        }
+        return _index;
+    }
+
+    /** Writes the working-file index back if it was used and changed. */
+    private void saveIndex() {
+        if (_index != null) {
+            _index.save();
+        }
+    }
+
+    /** Hashes working file NAME and, unless its contents match the blob
+     * HEADID it has in the head commit, writes its blob if absent.
+     *
+     * @param name file name
+     * @param headId blob sha1 in the head commit, or null
+     * @param index working index
+     * @return sha1 of the file's contents, or null if it is gone
+     * */
+    private String storeBlob(String name, String headId,
+                             WorkingIndex index) {
+        String sha1 = index.hash(name);
+        if (sha1 == null || sha1.equals(headId)) {
+            return sha1;
+        }
+        store().writeFile(ObjectStore.BLOB, sha1, Utils.join(_root, name));
+        return sha1;
+    }
+
+    /** Returns the sorted, distinct working files named by PATHS, which
+     * may be files, directories or globs. Throws GitletException if a
+     * path names nothing in the working directory.
+     *
+     * @param paths files, directories and globs
+     * @return file names relative to the working directory
+     * */
+    private List<String> expandPaths(String... paths) {
+        TreeSet<String> names = new TreeSet<>();
+        List<String> all = null;
+        for (String path : paths) {
+            if (isGlob(path)) {
+                if (all == null) {
+                    all = workingFiles(_root);
+                }
+                PathMatcher matcher =
+                        FileSystems.getDefault().getPathMatcher("glob:" + path);
+                boolean matched = false;
+                for (String name : all) {
+                    if (matcher.matches(Paths.get(name))) {
+                        names.add(name);
+                        matched = true;
+                    }
+                }
+                if (!matched) {
+                    throw new GitletException("File does not exist.");
+                }
+                continue;
+            }
+            File file = Utils.join(_root, path);
+            String name = relativeName(file);
+            if (name.startsWith("../") || name.equals(".gitlet")
+                    || name.startsWith(".gitlet/")) {
+                throw new GitletException("File does not exist.");
+            } else if (file.isDirectory()) {
+                names.addAll(workingFiles(file));
+            } else if (file.isFile()) {
+                names.add(name);
+            } else {
+                throw new GitletException("File does not exist.");
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** Returns the names, relative to the working directory, of every
+     * plain file under DIR, skipping the .gitlet folder.
+     *
+     * @param dir directory to list
+     * @return sorted file names
+     * */
+    private List<String> workingFiles(File dir) {
+        ArrayList<String> result = new ArrayList<>();
+        Path gitlet = _gitletDir.toPath().toAbsolutePath().normalize();
+        try {
+            walk(dir.toPath(), gitlet, result);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Adds the names of every plain file under DIR to RESULT, skipping
+     * the folder GITLET.
+     *
+     * @param dir directory to walk
+     * @param gitlet normalized absolute path of the .gitlet folder
+     * @param result list to fill
+     * */
+    private void walk(Path dir, Path gitlet, List<String> result)
+            throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                    Path path, BasicFileAttributes attrs) {
+                if (path.toAbsolutePath().normalize().equals(gitlet)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(
+                    Path path, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    result.add(relativeName(path.toFile()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Returns the name of FILE relative to the working directory, with
+     * '/' separating directories.
+     *
+     * @param file file in the working directory
+     * @return relative file name
+     * */
+    private String relativeName(File file) {
+        Path root = _root.toPath().toAbsolutePath().normalize();
+        Path path = file.toPath().toAbsolutePath().normalize();
+        return root.relativize(path).toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    /** Writes the contents of blob ID to working file NAME, creating
+     * its directory if needed, and records it in INDEX. Safe to call
+     * from several threads sharing one INDEX.
+     *
+     * @param name file name
+     * @param id blob sha1
+     * @param index working index
+     * */
+    private void writeWorkingFile(String name, String id,
+                                  WorkingIndex index) {
+        File file = Utils.join(_root, name);
+        file.getParentFile().mkdirs();
+        store().copyTo(ObjectStore.BLOB, id, file);
+        index.record(name, id);
+    }
+
+    /** Deletes working file NAME, if it exists, and any directories
+     * that deleting it leaves empty.
+     *
+     * @param name file name
+     * */
+    private void deleteWorkingFile(String name) {
+        File file = Utils.join(_root, name);
+        file.delete();
+        File dir = file.getParentFile();
+        while (dir != null && !relativeName(dir).isEmpty() && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Returns true iff PATH contains glob metacharacters.
+     *
+     * @param path path argument
+     * @return whether PATH is a glob
+     * */
+    private static boolean isGlob(String path) {
+        for (char c : path.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Runs TASK on a fork-join pool of THREADS threads, so that parallel
+     * streams inside it use that many threads, and returns its result.
+     *
+     * @param task task to run
+     * @param <T> result type
+     * @return result of TASK
+     * */
+    static <T> T inParallel(Callable<T> task) {
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalArgumentException(cause.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** The ID, time and message of a commit. */
+    public static class CommitInfo {
+        /** Commit ID with time TIME and message MESSAGE.
+         *
+         * @param id commit sha1
+         * @param time commit time in epoch millis
+         * @param message commit message
+         * */
+        CommitInfo(String id, long time, String message) {
+            _id = id;
+            _time = time;
+            _message = message;
+        }
+
+        /** Returns the commit's sha1.
+         * @return commit ID
+         * */
+        public String getId() {
+            return _id;
+        }
+
+        /** Returns the commit's time in epoch millis.
+         * @return commit time
+         * */
+        public long getTime() {
+            return _time;
+        }
+
+        /** Returns the commit's message.
+         * @return commit message
+         * */
+        public String getMessage() {
+            return _message;
+        }
+
+        /** Commit ID. */
+        private final String _id;
+
+        /** Commit time. */
+        private final long _time;
+
+        /** Commit message. */
+        private final String _message;
+    }
+
+    /** The working files a checkout or reset wrote and deleted. */
+    public static class CheckoutResult {
+        /** Result of checking out commit ID.
+         *
+         * @param id commit sha1
+         * */
+        CheckoutResult(String id) {
+            _id = id;
+            _written = new ArrayList<>();
+            _deleted = new ArrayList<>();
+        }
+
+        /** Returns the commit the files came from.
+         * @return commit sha1
+         * */
+        public String getCommit() {
+            return _id;
+        }
+
+        /** Returns the working files written.
+         * @return file names
+         * */
+        public List<String> getWritten() {
+            return _written;
+        }
+
+        /** Returns the working files deleted.
+         * @return file names
+         * */
+        public List<String> getDeleted() {
+            return _deleted;
+        }
+
+        /** Commit checked out. */
+        private final String _id;
+
+        /** Files written. */
+        private final List<String> _written;
+
+        /** Files deleted. */
+        private final List<String> _deleted;
+    }
+
+    /** The outcome of a merge. */
+    public static class MergeResult {
+        /** What a merge did. */
+        public enum Kind {
+            /** The given branch was already merged; nothing changed. */
+            ANCESTOR,
+            /** The current branch was moved to the given branch. */
+            FAST_FORWARD,
+            /** A merge commit was made. */
+            MERGED
+        }
+
+        /** A merge that did KIND, leaving the head at COMMIT, with
+         * conflicts iff CONFLICT.
+         *
+         * @param kind what the merge did
+         * @param commit new head, or null if it did not change
+         * @param conflict whether any file has conflict markers
+         * */
+        MergeResult(Kind kind, CommitInfo commit, boolean conflict) {
+            _kind = kind;
+            _commit = commit;
+            _conflict = conflict;
+        }
+
+        /** Returns what the merge did.
+         * @return merge kind
+         * */
+        public Kind getKind() {
+            return _kind;
+        }
+
+        /** Returns the new head commit.
+         * @return new head, or null if it did not change
+         * */
+        public CommitInfo getCommit() {
+            return _commit;
+        }
+
+        /** Returns true iff the merge left conflict markers in any file.
+         * @return whether there were conflicts
+         * */
+        public boolean hasConflict() {
+            return _conflict;
+        }
+
+        /** Merge kind. */
+        private final Kind _kind;
+
+        /** New head. */
+        private final CommitInfo _commit;
+
+        /** Whether there were conflicts. */
+        private final boolean _conflict;
+    }
+
+    /** The branches, staging area and working files of a repository. */
+    public static class Status {
+        /** An empty status with current branch CURRENT.
+         *
+         * @param current current branch
+         * */
+        Status(String current) {
+            _current = current;
+            _branches = new ArrayList<>();
+            _staged = new ArrayList<>();
+            _removed = new ArrayList<>();
+            _deleted = new ArrayList<>();
+            _modified = new ArrayList<>();
+            _untracked = new ArrayList<>();
+        }
+
+        /** Returns the current branch.
+         * @return branch name
+         * */
+        public String getCurrentBranch() {
+            return _current;
+        }
+
+        /** Returns every branch, sorted.
+         * @return branch names
+         * */
+        public List<String> getBranches() {
+            return _branches;
+        }
+
+        /** Returns the files staged for addition, sorted.
+         * @return file names
+         * */
+        public List<String> getStaged() {
+            return _staged;
+        }
+
+        /** Returns the files staged for removal, sorted.
+         * @return file names
+         * */
+        public List<String> getRemoved() {
+            return _removed;
+        }
+
+        /** Returns the tracked files deleted without being staged for
+         * removal, sorted.
+         * @return file names
+         * */
+        public List<String> getDeleted() {
+            return _deleted;
+        }
+
+        /** Returns the files whose contents differ from the version
+         * tracked or staged, sorted.
+         * @return file names
+         * */
+        public List<String> getModified() {
+            return _modified;
+        }
+
+        /** Returns the working files neither tracked nor staged, and
+         * those staged for removal, sorted.
+         * @return file names
+         * */
+        public List<String> getUntracked() {
+            return _untracked;
+        }
+
+        /** Current branch. */
+        private final String _current;
+
+        /** Branches. */
+        private final List<String> _branches;
+
+        /** Files staged for addition. */
+        private final List<String> _staged;
+
+        /** Files staged for removal. */
+        private final List<String> _removed;
+
+        /** Tracked files deleted. */
+        private final List<String> _deleted;
+
+        /** Modified files. */
+        private final List<String> _modified;
+
+        /** Untracked files. */
+        private final List<String> _untracked;
+    }
+
+    /** State read from a file and kept until another process changes
+     * the file, as seen by its size and modification time. Callers get
+     * their own copy, so changes they make reach the cache only once
+     * they are saved. */
+    private static final class Cached<T> {
+        /** State kept in FILE, read by READ and copied by COPY.
+         *
+         * @param file file holding the state
+         * @param read reads the state from the file
+         * @param copy copies the state
+         * */
+        Cached(File file, Function<File, T> read, UnaryOperator<T> copy) {
+            _file = file;
+            _read = read;
+            _copy = copy;
+        }
+
+        /** Returns a copy of the state, reading the file first if it has
+         * changed since it was last read or saved.
+         * @return the state
+         * */
+        synchronized T get() {
+            long[] stamp = stamp();
+            if (_value == null || !Arrays.equals(stamp, _stamp)) {
+                _value = _read.apply(_file);
+                _stamp = stamp;
+            }
+            return _copy.apply(_value);
+        }
+
+        /** Records that VALUE has just been written to the file.
+         * @param value the state written
+         * */
+        synchronized void saved(T value) {
+            _value = _copy.apply(value);
+            _stamp = stamp();
+        }
+
+        /** Returns the size and modification time of the file, or null
+         * if it cannot be read.
+         * @return stamp of the file
+         * */
+        private long[] stamp() {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        _file.toPath(), BasicFileAttributes.class);
+                return new long[] {attrs.size(),
+                        attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)};
+            } catch (IOException excp) {
+                return null;
+            }
+        }
+
+        /** File holding the state. */
+        private final File _file;
+
+        /** Reads the state from _file. */
+        private final Function<File, T> _read;
+
+        /** Copies the state. */
+        private final UnaryOperator<T> _copy;
+
+        /** The state as last read or saved, or null. */
+        private T _value;
+
+        /** Stamp of _file when _value was read or saved. */
+        private long[] _stamp;
+    }
+
+    /** Repositories opened so far, by normalized .gitlet folder path. */
+    private static final HashMap<String, Repository> _repositories =
+            new HashMap<>();
+
+    /** Working directory. */
+    private final File _root;
+
+    /** Metadata folder. */
+    private final File _gitletDir;
+
+    /** Commits folder. */
+    private final File _commits;
+
+    /** File that stores the staging area. */
+    private final File _stagingFile;
+
+    /** File that stores the pointers. */
+    private final File _pointerFile;
+
+    /** File that stores the remotes. */
+    private final File _remoteFile;
+
+    /** File that stores the working-file metadata index. */
+    private final File _indexFile;
+
+    /** Working-file index, once loaded. */
+    private WorkingIndex _index;
+
+    /** Branch pointers. */
+    private final Cached<Pointer> _pointer;
+
+    /** Staging area. */
+    private final Cached<StagingArea> _staging;
+
+    /** Remotes. */
+    private final Cached<Remote> _remote;
+}
@@ -1,36 +1,408 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
+/** The staging area: the blob ID staged for each added file and the
+ * set of files staged for removal. Blobs are written once, when a file
+ * is added, so the staging area only holds references to them.
+ *
+ *  On disk it is a log: a 4-byte header ("GLS" and a version byte)
+ *  followed by records, each an operation byte, a varint-length file
+ *  name and, for ADD, the raw 20-byte blob ID. Changes are appended to
+ *  the log when the staging area is saved; the log is rewritten only
+ *  when it is cleared, has grown much longer than its contents or ends
+ *  in a torn record, as an interrupted or concurrent append can leave
+ *  it. A rewrite replaces the file atomically. Staging files written
+ *  with Java serialization are still read.
+ *  @author Wesley Zhang
+ */
 public class StagingArea implements Serializable {
+    /** Pinned so staging areas written before this field existed still
+     * load. */
+    private static final long serialVersionUID = -3820376291489939980L;
+
+    /** Fields of the legacy serialized form of a staging area. */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("_add", TreeMap.class),
+        new ObjectStreamField("_remove", TreeMap.class),
+    };
+
+    /** Magic bytes and version that start the staging file. */
+    private static final byte[] HEADER = {'G', 'L', 'S', 1};
+
+    /** Record staging a file's blob for addition. */
+    private static final byte ADD = 'A';
+
+    /** Record unstaging a file for addition. */
+    private static final byte UNADD = 'a';
+
+    /** Record staging a file for removal. */
+    private static final byte REMOVE = 'R';
+
+    /** Record unstaging a file for removal. */
+    private static final byte UNREMOVE = 'r';
+
     /** StagingArea constructor.*/
     StagingArea() {
         _add = new TreeMap<>();
-        _remove = new TreeMap<>();
+        _remove = new TreeSet<>();
+        _pending = new ByteArrayOutputStream();
+        _rewrite = true;
     }
 
-    /** Get the add treemap.
+    /** Reads the staging area stored in FILE. A legacy serialized
+     * staging area is converted, writing any staged blob it holds to
+     * BLOBS, and is rewritten in the log format on the next save.
      *
-     * @return add treemap
+     * @param file staging file
+     * @param blobs blobs folder
+     * @return staging area
      * */
-    public TreeMap<String, byte[]> getAdd() {
-        return this._add;
+    static StagingArea load(File file, File blobs) {
+        byte[] bytes = Utils.readContents(file);
+        StagingArea staging;
+        if (bytes.length >= 2 && bytes[0] == (byte) 0xAC
+                && bytes[1] == (byte) 0xED) {
+            staging = readLegacy(bytes, blobs);
+            staging._rewrite = true;
+        } else {
+            staging = new StagingArea();
+            staging._rewrite = !staging.replay(ByteBuffer.wrap(bytes));
+        }
+        staging._file = file;
+        return staging;
     }
 
-    /** Get the remove treemap.
+    /** Saves the staging area to the file it was loaded from or last
+     * saved to. */
+    void save() {
+        save(_file);
+    }
+
+    /** Saves the staging area to FILE, appending the changes made since
+     * it was loaded or replacing the whole log with a new file.
      *
-     * @return remove treemap
+     * @param file staging file
      * */
-    public TreeMap<String, byte[]> getRemove() {
-        return this._remove;
+    void save(File file) {
+        _file = file;
+        if (!_rewrite && _records > COMPACT_MIN
+                && _records > 2 * (_add.size() + _remove.size())) {
+            _rewrite = true;
+        }
+        try {
+            if (_rewrite) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                out.write(HEADER);
+                _records = 0;
+                for (Map.Entry<String, String> entry : _add.entrySet()) {
+                    writeRecord(out, ADD, entry.getKey(), entry.getValue());
+                }
+                for (String name : _remove) {
+                    writeRecord(out, REMOVE, name, null);
+                }
+                replace(file, out.toByteArray());
+                _rewrite = false;
+            } else if (_pending.size() > 0) {
+                try (FileOutputStream out = new FileOutputStream(file, true)) {
+                    _pending.writeTo(out);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _pending.reset();
     }
 
-    /** Add treemap.*/
-    private TreeMap<String, byte[]> _add;
+    /** Returns a copy of this staging area, including the changes not
+     * yet saved, that saves to the same file.
+     *
+     * @return copy
+     * */
+    StagingArea copy() {
+        StagingArea copy = new StagingArea();
+        copy._add.putAll(_add);
+        copy._remove.addAll(_remove);
+        copy._file = _file;
+        copy._pending.writeBytes(_pending.toByteArray());
+        copy._records = _records;
+        copy._rewrite = _rewrite;
+        return copy;
+    }
 
-    /** Remove treemap.*/
-    private TreeMap<String, byte[]> _remove;
-}
+    /** Replaces the contents of FILE with BYTES by renaming a new file
+     * over it, so readers never see a partial log.
+     *
+     * @param file staging file
+     * @param bytes new contents
+     * */
+    private static void replace(File file, byte[] bytes) throws IOException {
+        Path tmp = Files.createTempFile(
+                file.getAbsoluteFile().getParentFile().toPath(), "tmp-",
+                ".staging");
+        try {
+            Files.write(tmp, bytes);
+            Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Stages file NAME for addition with blob ID, cancelling any staged
+     * removal of it.
+     *
+     * @param name file name
+     * @param id blob sha1
+     * */
+    void stage(String name, String id) {
+        unstageRemoval(name);
+        if (!id.equals(_add.put(name, id))) {
+            log(ADD, name, id);
+        }
+    }
+
+    /** Unstages file NAME for addition.
+     *
+     * @param name file name
+     * */
+    void unstage(String name) {
+        if (_add.remove(name) != null) {
+            log(UNADD, name, null);
+        }
+    }
 
+    /** Stages file NAME for removal, unstaging any addition of it.
+     *
+     * @param name file name
+     * */
+    void stageRemoval(String name) {
+        unstage(name);
+        if (_remove.add(name)) {
+            log(REMOVE, name, null);
+        }
+    }
 
+    /** Unstages file NAME for removal.
+     *
+     * @param name file name
+     * */
+    void unstageRemoval(String name) {
+        if (_remove.remove(name)) {
+            log(UNREMOVE, name, null);
+        }
+    }
+
+    /** Empties the staging area. */
+    void clear() {
+        _add.clear();
+        _remove.clear();
+        _pending.reset();
+        _rewrite = true;
+    }
+
+    /** Returns true iff nothing is staged.
+     * @return whether the staging area is empty
+     * */
+    boolean isEmpty() {
+        return _add.isEmpty() && _remove.isEmpty();
+    }
+
+    /** Get the files staged for addition and their blob IDs.
+     *
+     * @return read-only add map
+     * */
+    public SortedMap<String, String> getAdd() {
+        return Collections.unmodifiableSortedMap(this._add);
+    }
+
+    /** Get the files staged for removal.
+     *
+     * @return read-only remove set
+     * */
+    public SortedSet<String> getRemove() {
+        return Collections.unmodifiableSortedSet(this._remove);
+    }
+
+    /** Applies the records in BUF, which starts with the header, up to
+     * the first torn or unreadable one.
+     *
+     * @param buf contents of a staging file
+     * @return true iff every record in BUF was applied
+     * */
+    private boolean replay(ByteBuffer buf) {
+        if (buf.remaining() < HEADER.length) {
+            return false;
+        }
+        for (byte b : HEADER) {
+            if (buf.get() != b) {
+                throw new IllegalArgumentException("bad staging file");
+            }
+        }
+        while (buf.hasRemaining()) {
+            byte op;
+            String name;
+            String id = null;
+            try {
+                op = buf.get();
+                name = BinaryFormat.readString(buf);
+                if (op == ADD) {
+                    id = BinaryFormat.readId(buf);
+                }
+            } catch (BufferUnderflowException | IndexOutOfBoundsException
+                     | IllegalArgumentException excp) {
+                return false;
+            }
+            switch (op) {
+            case ADD:
+                _add.put(name, id);
+                break;
+            case UNADD:
+                _add.remove(name);
+                break;
+            case REMOVE:
+                _remove.add(name);
+                break;
+            case UNREMOVE:
+                _remove.remove(name);
+                break;
+            default:
+                return false;
+            }
+            _records += 1;
+        }
+        return true;
+    }
+
+    /** Queues a record of operation OP on file NAME with blob ID (for
+     * ADD) to be appended on the next save.
+     *
+     * @param op operation
+     * @param name file name
+     * @param id blob sha1, or null
+     * */
+    private void log(byte op, String name, String id) {
+        if (_rewrite) {
+            return;
+        }
+        try {
+            writeRecord(_pending, op, name, id);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes a record of operation OP on NAME with blob ID to OUT.
+     *
+     * @param out stream to write to
+     * @param op operation
+     * @param name file name
+     * @param id blob sha1, or null
+     * */
+    private void writeRecord(ByteArrayOutputStream out, byte op,
+                             String name, String id) throws IOException {
+        out.write(op);
+        BinaryFormat.writeString(out, name);
+        if (op == ADD) {
+            BinaryFormat.writeId(out, id);
+        }
+        _records += 1;
+    }
+
+    /** Deserializes a legacy staging area, whose added files map to
+     * their full contents, writing each staged blob to BLOBS.
+     *
+     * @param bytes contents of a legacy staging file
+     * @param blobs blobs folder
+     * @return staging area
+     * */
+    private static StagingArea readLegacy(byte[] bytes, File blobs) {
+        LegacyFields fields;
+        try (ObjectInputStream in =
+                     new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            fields = ((StagingArea) in.readObject())._legacy;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        StagingArea staging = new StagingArea();
+        if (fields._add != null) {
+            for (Map.Entry<?, ?> entry : fields._add.entrySet()) {
+                byte[] contents = (byte[]) entry.getValue();
+                String id = Utils.sha1(contents);
+                ObjectStore.database(blobs.getParentFile())
+                        .write(ObjectStore.BLOB, id, contents);
+                staging._add.put((String) entry.getKey(), id);
+            }
+        }
+        if (fields._remove != null) {
+            for (Object name : fields._remove.keySet()) {
+                staging._remove.add((String) name);
+            }
+        }
+        return staging;
+    }
+
+    /** Reads the legacy serialized fields of a staging area.
+     *
+     * @param in stream to read from
+     * */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _legacy = new LegacyFields();
+        _legacy._add = (TreeMap<?, ?>) fields.get("_add", null);
+        _legacy._remove = (TreeMap<?, ?>) fields.get("_remove", null);
+    }
+
+    /** The maps held by a legacy serialized staging area. */
+    private static class LegacyFields {
+        /** File name to staged contents. */
+        private TreeMap<?, ?> _add;
+
+        /** File name to null for files staged for removal. */
+        private TreeMap<?, ?> _remove;
+    }
+
+    /** Log length below which the log is never compacted. */
+    private static final int COMPACT_MIN = 64;
+
+    /** Add treemap: file name to blob sha1.*/
+    private TreeMap<String, String> _add;
+
+    /** Files staged for removal.*/
+    private TreeSet<String> _remove;
+
+    /** Staging file this was loaded from or last saved to. */
+    private transient File _file;
+
+    /** Records not yet appended to _file. */
+    private transient ByteArrayOutputStream _pending;
+
+    /** Number of records in _file plus _pending. */
+    private transient int _records;
+
+    /** True iff the next save must rewrite the whole log. */
+    private transient boolean _rewrite;
+
+    /** Fields read from a legacy serialized staging area. */
+    private transient LegacyFields _legacy;
+}
@@ -0,0 +1,321 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** One directory of a commit's snapshot: the blob ID of each file in
+ * it and the tree ID of each subdirectory. Trees are content-addressed
+ * and kept in the ObjectDatabase, so a directory that did not change
+ * between two commits is stored once and shared by both.
+ *
+ *  On disk a tree is a 4-byte header ("GLT" and a version byte), the
+ *  varint number of entries and then the entries sorted by name, each
+ *  a kind byte (FILE or DIR), the varint-length UTF-8 name and the raw
+ *  20-byte ID. A tree's ID is the SHA-1 of that encoding.
+ *  @author Wesley Zhang
+ */
+class Tree {
+
+    /** Magic bytes and version that start every tree file. */
+    private static final byte[] HEADER = {'G', 'L', 'T', 1};
+
+    /** Kind byte of a file entry. */
+    private static final byte FILE = 'F';
+
+    /** Kind byte of a subdirectory entry. */
+    private static final byte DIR = 'D';
+
+    /** Receives the differences between two trees. */
+    interface DiffVisitor {
+        /** Called for each file PATH whose blob differs, with OLDID and
+         * NEWID null where the file is absent.
+         *
+         * @param path file name relative to the root
+         * @param oldId blob sha1 in the old tree, or null
+         * @param newId blob sha1 in the new tree, or null
+         * */
+        void changed(String path, String oldId, String newId);
+    }
+
+    /** An empty tree. */
+    Tree() {
+        _files = new TreeMap<>();
+        _dirs = new TreeMap<>();
+    }
+
+    /** Reads the tree with sha1 ID from STORE.
+     *
+     * @param store object store
+     * @param id tree sha1
+     * @return Tree
+     * */
+    static Tree read(ObjectDatabase store, String id) {
+        ByteBuffer buf = ByteBuffer.wrap(store.read(ObjectStore.TREE, id));
+        byte[] header = new byte[HEADER.length];
+        buf.get(header);
+        if (!Arrays.equals(header, HEADER)) {
+            throw new IllegalArgumentException("not a tree file");
+        }
+        Tree tree = new Tree();
+        int count = BinaryFormat.readVarint32(buf);
+        for (int i = 0; i < count; i += 1) {
+            byte kind = buf.get();
+            String name = BinaryFormat.readString(buf);
+            String entry = BinaryFormat.readId(buf);
+            if (kind == DIR) {
+                tree._dirs.put(name, entry);
+            } else {
+                tree._files.put(name, entry);
+            }
+        }
+        return tree;
+    }
+
+    /** Writes this tree to STORE unless it is already there.
+     *
+     * @param store object store
+     * @return this tree's sha1
+     * */
+    String write(ObjectDatabase store) {
+        byte[] bytes = encode();
+        String id = Utils.sha1((Object) bytes);
+        store.write(ObjectStore.TREE, id, bytes);
+        return id;
+    }
+
+    /** Returns this tree's encoding.
+     * @return encoded tree
+     * */
+    private byte[] encode() {
+        TreeMap<String, Byte> kinds = new TreeMap<>();
+        for (String name : _files.keySet()) {
+            kinds.put(name, FILE);
+        }
+        for (String name : _dirs.keySet()) {
+            kinds.put(name, DIR);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            out.write(HEADER);
+            BinaryFormat.writeVarint(out, kinds.size());
+            for (Map.Entry<String, Byte> entry : kinds.entrySet()) {
+                String name = entry.getKey();
+                byte kind = entry.getValue();
+                out.write(kind);
+                BinaryFormat.writeString(out, name);
+                BinaryFormat.writeId(out,
+                        kind == DIR ? _dirs.get(name) : _files.get(name));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /** Writes the trees holding the files in BLOBS, a map from file
+     * name to blob sha1, to STORE.
+     *
+     * @param store object store
+     * @param blobs every file in the snapshot
+     * @return root tree sha1
+     * */
+    static String fromBlobs(ObjectDatabase store,
+                            SortedMap<String, String> blobs) {
+        return update(store, null, blobs, new TreeSet<>());
+    }
+
+    /** Writes the trees of a snapshot that is the one with root tree
+     * ROOT plus the files in ADD and minus the files in REMOVE. Only
+     * the trees on the paths of changed files are rewritten; every
+     * other subtree is shared with ROOT.
+     *
+     * @param store object store
+     * @param root root tree sha1, or null for an empty snapshot
+     * @param add file name to blob sha1 of added or changed files
+     * @param remove names of removed files
+     * @return new root tree sha1
+     * */
+    static String update(ObjectDatabase store, String root,
+                         SortedMap<String, String> add, Set<String> remove) {
+        TreeMap<String, String> changes = new TreeMap<>(add);
+        for (String name : remove) {
+            changes.put(name, null);
+        }
+        return update(store, root, changes).write(store);
+    }
+
+    /** Returns the tree with sha1 ID in STORE with CHANGES applied,
+     * writing any changed subtrees. CHANGES maps names relative to this
+     * tree to blob sha1s, or to null for removals.
+     *
+     * @param store object store
+     * @param id tree sha1, or null for an empty tree
+     * @param changes changes to apply
+     * @return updated tree, not yet written
+     * */
+    private static Tree update(ObjectDatabase store, String id,
+                               SortedMap<String, String> changes) {
+        Tree tree = id == null ? new Tree() : read(store, id);
+        TreeMap<String, TreeMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String name = change.getKey();
+            int slash = name.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(name.substring(0, slash),
+                        k -> new TreeMap<>())
+                        .put(name.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                tree._files.remove(name);
+            } else {
+                tree._files.put(name, change.getValue());
+                tree._dirs.remove(name);
+            }
+        }
+        for (Map.Entry<String, TreeMap<String, String>> dir
+                : below.entrySet()) {
+            String name = dir.getKey();
+            Tree sub = update(store, tree._dirs.get(name), dir.getValue());
+            if (sub.isEmpty()) {
+                tree._dirs.remove(name);
+            } else {
+                tree._dirs.put(name, sub.write(store));
+                tree._files.remove(name);
+            }
+        }
+        return tree;
+    }
+
+    /** Returns every file under the tree with sha1 ID in STORE.
+     *
+     * @param store object store
+     * @param id root tree sha1
+     * @return file name to blob sha1
+     * */
+    static TreeMap<String, String> flatten(ObjectDatabase store, String id) {
+        TreeMap<String, String> result = new TreeMap<>();
+        flatten(store, id, "", result);
+        return result;
+    }
+
+    /** Adds every file under the tree with sha1 ID in STORE to RESULT,
+     * with names prefixed by PREFIX.
+     *
+     * @param store object store
+     * @param id tree sha1
+     * @param prefix path of the tree followed by '/', or ""
+     * @param result map to fill
+     * */
+    private static void flatten(ObjectDatabase store, String id, String prefix,
+                                TreeMap<String, String> result) {
+        Tree tree = read(store, id);
+        for (Map.Entry<String, String> entry : tree._files.entrySet()) {
+            result.put(prefix + entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, String> entry : tree._dirs.entrySet()) {
+            flatten(store, entry.getValue(),
+                    prefix + entry.getKey() + "/", result);
+        }
+    }
+
+    /** Returns the blob sha1 of file PATH under the tree with sha1 ID in
+     * STORE, reading only the trees on its path.
+     *
+     * @param store object store
+     * @param id root tree sha1
+     * @param path file name relative to the root
+     * @return blob sha1, or null if there is no such file
+     * */
+    static String lookup(ObjectDatabase store, String id, String path) {
+        String[] parts = path.split("/");
+        for (int i = 0; i < parts.length - 1; i += 1) {
+            id = read(store, id)._dirs.get(parts[i]);
+            if (id == null) {
+                return null;
+            }
+        }
+        return read(store, id)._files.get(parts[parts.length - 1]);
+    }
+
+    /** Reports to VISITOR, directory by directory, every file that differs
+     * between the trees with sha1s OLDID and NEWID in STORE. Subtrees
+     * with equal IDs are identical and are skipped without being read.
+     *
+     * @param store object store
+     * @param oldId old root tree sha1, or null for an empty tree
+     * @param newId new root tree sha1, or null for an empty tree
+     * @param visitor receives the changed files
+     * */
+    static void diff(ObjectDatabase store, String oldId, String newId,
+                     DiffVisitor visitor) {
+        diff(store, oldId, newId, "", visitor);
+    }
+
+    /** Reports the files that differ between the trees with sha1s OLDID
+     * and NEWID in STORE, whose path is PREFIX, to VISITOR.
+     *
+     * @param store object store
+     * @param oldId old tree sha1, or null
+     * @param newId new tree sha1, or null
+     * @param prefix path of the trees followed by '/', or ""
+     * @param visitor receives the changed files
+     * */
+    private static void diff(ObjectDatabase store, String oldId, String newId,
+                             String prefix, DiffVisitor visitor) {
+        if (oldId != null && oldId.equals(newId)) {
+            return;
+        }
+        Tree older = oldId == null ? new Tree() : read(store, oldId);
+        Tree newer = newId == null ? new Tree() : read(store, newId);
+        TreeSet<String> names = new TreeSet<>(older._files.keySet());
+        names.addAll(newer._files.keySet());
+        names.addAll(older._dirs.keySet());
+        names.addAll(newer._dirs.keySet());
+        for (String name : names) {
+            String a = older._files.get(name);
+            String b = newer._files.get(name);
+            if (a == null ? b != null : !a.equals(b)) {
+                visitor.changed(prefix + name, a, b);
+            }
+            String dirA = older._dirs.get(name);
+            String dirB = newer._dirs.get(name);
+            if (dirA != null || dirB != null) {
+                diff(store, dirA, dirB, prefix + name + "/", visitor);
+            }
+        }
+    }
+
+    /** Returns the files directly in this tree.
+     * @return read-only file name to blob sha1 map
+     * */
+    SortedMap<String, String> getFiles() {
+        return Collections.unmodifiableSortedMap(_files);
+    }
+
+    /** Returns the subdirectories of this tree.
+     * @return read-only directory name to tree sha1 map
+     * */
+    SortedMap<String, String> getDirs() {
+        return Collections.unmodifiableSortedMap(_dirs);
+    }
+
+    /** Returns true iff this tree has no entries.
+     * @return whether the tree is empty
+     * */
+    boolean isEmpty() {
+        return _files.isEmpty() && _dirs.isEmpty();
+    }
+
+    /** File name to blob sha1. */
+    private final TreeMap<String, String> _files;
+
+    /** Subdirectory name to tree sha1. */
+    private final TreeMap<String, String> _dirs;
+}
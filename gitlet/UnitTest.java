@@ -4,6 +4,19 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,6 +33,312 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
+    /** Edits to different parts of a file merge cleanly. */
+    @Test
+    public void diff3NonOverlappingTest() throws IOException {
+        assertMerge("a\nb\nc\nd\ne\n", "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\n",
+                "A\nb\nc\nd\nE\n", false);
+        assertMerge("a\nb\nc\n", "a\nb\nc\nd\n", "z\na\nb\nc\n",
+                "z\na\nb\nc\nd\n", false);
+    }
+
+    /** Overlapping edits conflict on just the lines they touch. */
+    @Test
+    public void diff3OverlappingTest() throws IOException {
+        assertMerge("a\nb\nc\nd\ne\n", "a\nB\nc\nd\ne\n", "a\nX\nc\nd\nE\n",
+                "a\n<<<<<<< HEAD\nB\n=======\nX\n>>>>>>>\nc\nd\nE\n", true);
+    }
+
+    /** The same edit made on both sides is taken once. */
+    @Test
+    public void diff3IdenticalTest() throws IOException {
+        assertMerge("a\nb\nc\n", "a\nB\nc\n", "a\nB\nc\n", "a\nB\nc\n",
+                false);
+    }
+
+    /** A last line without a newline is kept as is, and a conflict on it
+     *  still puts the markers on lines of their own. */
+    @Test
+    public void diff3NoFinalNewlineTest() throws IOException {
+        assertMerge("a\nb\nc", "A\nb\nc", "a\nb\nC", "A\nb\nC", false);
+        assertMerge("a\nb", "a\nB", "a\nX",
+                "a\n<<<<<<< HEAD\nB\n=======\nX\n>>>>>>>\n", true);
+    }
+
+    /** Binary and oversized files are not merged line by line. */
+    @Test
+    public void diff3TextTest() throws IOException {
+        byte[] text = "a\nb\n".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(text, Diff3.text(new ByteArrayInputStream(text)));
+        assertNull(Diff3.text(new ByteArrayInputStream(
+                new byte[] {'a', 0, 'b'})));
+        assertNull(Diff3.text(new ByteArrayInputStream(
+                new byte[Diff3.MAX_BYTES + 1])));
+    }
+
+    /** Sides whose changes are too large to diff become one conflict
+     *  holding both whole files. */
+    @Test
+    public void diff3OversizedTest() throws IOException {
+        StringBuilder base = new StringBuilder();
+        StringBuilder ours = new StringBuilder();
+        StringBuilder theirs = new StringBuilder();
+        for (int i = 0; i < 5000; i += 1) {
+            base.append(i).append('\n');
+            ours.append("o").append(i).append('\n');
+            theirs.append("t").append(i).append('\n');
+        }
+        assertMerge(base.toString(), ours.toString(), theirs.toString(),
+                "<<<<<<< HEAD\n" + ours + "=======\n" + theirs + ">>>>>>>\n",
+                true);
+    }
+
+    /** In a criss-cross history, where two branches each merged the
+     *  other, both crossed commits are best common ancestors, newest
+     *  first; ordinary histories have just the fork point. */
+    @Test
+    public void mergeBaseCrissCrossTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            ObjectDatabase store = new MemoryObjectDatabase();
+            ObjectStore.register(dir, store);
+            CommitGraph graph = CommitGraph.of(dir);
+            String root = addCommit(store, graph, 1, null, null);
+            String a = addCommit(store, graph, 2, root, null);
+            String b = addCommit(store, graph, 3, root, null);
+            String c = addCommit(store, graph, 4, a, b);
+            String d = addCommit(store, graph, 5, b, a);
+            String e = addCommit(store, graph, 6, c, null);
+            String f = addCommit(store, graph, 7, d, null);
+            String other = addCommit(store, graph, 8, null, null);
+            assertEquals(List.of(b, a), MergeBase.bases(graph, e, f));
+            assertEquals(List.of(b, a), MergeBase.bases(graph, c, d));
+            assertEquals(List.of(root), MergeBase.bases(graph, a, b));
+            assertEquals(List.of(a), MergeBase.bases(graph, c, a));
+            assertEquals(List.of(e), MergeBase.bases(graph, e, e));
+            assertEquals(Collections.emptyList(),
+                    MergeBase.bases(graph, other, e));
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+    /** Adds a commit made at TIME with parents PARENT and PARENT2, either
+     *  of which may be null, to GRAPH, keeping its trees in STORE, and
+     *  returns its sha1. */
+    private static String addCommit(ObjectDatabase store, CommitGraph graph,
+                                    long time, String parent,
+                                    String parent2) {
+        Commit commit = new Commit("commit " + time, parent, store);
+        if (parent2 != null) {
+            commit.setParent2(parent2);
+        }
+        commit.setTime(time);
+        String id = commit.commitSha1();
+        graph.add(id, commit);
+        return id;
+    }
+
+    /** Deletes FILE and, if it is a directory, everything in it. */
+    private static void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** A commit decodes from its version 2 encoding, which names its
+     *  tree, to the same parents, time, message and files. */
+    @Test
+    public void commitEncodeTest() throws IOException {
+        ObjectDatabase store = new MemoryObjectDatabase();
+        TreeMap<String, String> blobs = new TreeMap<>();
+        blobs.put("a.txt", ID1);
+        blobs.put("dir/b.txt", ID2);
+        Commit commit = new Commit("both parents", ID1, store);
+        commit.setParent2(ID2);
+        commit.setTime(1234567890123L);
+        commit.setBlobs(blobs);
+        byte[] bytes = commit.encode();
+        assertEquals(Commit.VERSION, bytes[Commit.MAGIC.length]);
+        assertFalse(Commit.isLegacy(bytes));
+
+        Commit decoded = Commit.decode(bytes, store);
+        assertFalse(decoded.isFlat());
+        assertEquals("both parents", decoded.getMessage());
+        assertEquals(ID1, decoded.getParent());
+        assertEquals(ID2, decoded.getParent2());
+        assertEquals(1234567890123L, decoded.getTime());
+        assertEquals(commit.getTree(), decoded.getTree());
+        assertEquals(blobs, decoded.getBlobs());
+        assertArrayEquals(bytes, decoded.encode());
+
+        Commit root = new Commit("root", null, store);
+        root.setBlobs(new TreeMap<>());
+        Commit decodedRoot = Commit.decode(root.encode(), store);
+        assertNull(decodedRoot.getParent());
+        assertTrue(decodedRoot.getBlobs().isEmpty());
+    }
+
+    /** A version 1 commit, with a flat table of files whose names share
+     *  prefixes, still decodes, and re-encodes as version 2. */
+    @Test
+    public void commitFlatDecodeTest() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(1);
+        BinaryFormat.writeId(header, ID1);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            header.write((int) (42L >>> shift));
+        }
+        BinaryFormat.writeString(header, "flat");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(Commit.MAGIC);
+        out.write(1);
+        BinaryFormat.writeVarint(out, header.size());
+        header.writeTo(out);
+        BinaryFormat.writeVarint(out, 2);
+        writeFlatEntry(out, 0, "dir/a", ID1);
+        writeFlatEntry(out, 4, "b", ID2);
+
+        ObjectDatabase store = new MemoryObjectDatabase();
+        Commit commit = Commit.decode(out.toByteArray(), store);
+        assertTrue(commit.isFlat());
+        assertEquals("flat", commit.getMessage());
+        assertEquals(ID1, commit.getParent());
+        assertEquals(ID1, commit.getParent2());
+        assertEquals(42L, commit.getTime());
+        TreeMap<String, String> blobs = new TreeMap<>();
+        blobs.put("dir/a", ID1);
+        blobs.put("dir/b", ID2);
+        assertEquals(blobs, commit.getBlobs());
+
+        byte[] upgraded = commit.encode();
+        assertEquals(Commit.VERSION, upgraded[Commit.MAGIC.length]);
+        assertEquals(blobs, Commit.decode(upgraded, store).getBlobs());
+    }
+
+    /** A commit written by Java serialization loads and is rewritten in
+     *  place in the binary format, keeping its contents. */
+    @Test
+    public void commitLegacyUpgradeTest() throws IOException {
+        File dir = Files.createTempDirectory("gitlet").toFile();
+        try {
+            ObjectStore store = ObjectStore.of(dir);
+            byte[] legacy = Base64.getDecoder().decode(LEGACY_COMMIT);
+            assertTrue(Commit.isLegacy(legacy));
+            store.write(ObjectStore.COMMIT, ID2, legacy);
+            CommitCache.clear();
+
+            Commit commit = Commit.read(store, ID2);
+            assertEquals("legacy commit", commit.getMessage());
+            assertEquals(ID1, commit.getParent());
+            assertEquals(1000000000000L, commit.getTime());
+            TreeMap<String, String> blobs = new TreeMap<>();
+            blobs.put("a.txt", ID2);
+            assertEquals(blobs, commit.getBlobs());
+
+            byte[] stored = store.read(ObjectStore.COMMIT, ID2);
+            assertFalse(Commit.isLegacy(stored));
+            Commit upgraded = Commit.decode(stored, store);
+            assertEquals("legacy commit", upgraded.getMessage());
+            assertEquals(ID1, upgraded.getParent());
+            assertEquals(1000000000000L, upgraded.getTime());
+            assertEquals(blobs, upgraded.getBlobs());
+        } finally {
+            CommitCache.clear();
+            deleteAll(dir);
+        }
+    }
+
+    /** Writes to OUT a version 1 file table entry for blob ID, whose
+     *  name is the first SHARED bytes of the previous name followed by
+     *  REST. */
+    private static void writeFlatEntry(ByteArrayOutputStream out,
+                                       int shared, String rest,
+                                       String id) throws IOException {
+        byte[] bytes = rest.getBytes(StandardCharsets.UTF_8);
+        BinaryFormat.writeVarint(out, shared);
+        BinaryFormat.writeVarint(out, bytes.length);
+        out.write(bytes);
+        BinaryFormat.writeId(out, id);
+    }
+
+    /** Sample object ids. */
+    private static final String ID1 =
+            "0123456789abcdef0123456789abcdef01234567";
+    private static final String ID2 =
+            "89abcdef0123456789abcdef0123456789abcdef";
+
+    /** A commit serialized by an older version, with message "legacy
+     *  commit", parent ID1, time 1000000000000 and file a.txt as ID2. */
+    private static final String LEGACY_COMMIT =
+            "rO0ABXNyAA1naXRsZXQuQ29tbWl09xin8FW+OzgCAAVMAAZfYmxvYnN0"
+            + "ABNMamF2YS91dGlsL1RyZWVNYXA7TAAIX21lc3NhZ2V0ABJMamF2YS9s"
+            + "YW5nL1N0cmluZztMAAdfcGFyZW50cQB+AAJMAAhfcGFyZW50MnEAfgAC"
+            + "TAAFX3RpbWV0ABRMamF2YS9zcWwvVGltZXN0YW1wO3hwc3IAEWphdmEu"
+            + "dXRpbC5UcmVlTWFwDMH2Pi0lauYDAAFMAApjb21wYXJhdG9ydAAWTGph"
+            + "dmEvdXRpbC9Db21wYXJhdG9yO3hwcHcEAAAAAXQABWEudHh0dAAoODlh"
+            + "YmNkZWYwMTIzNDU2Nzg5YWJjZGVmMDEyMzQ1Njc4OWFiY2RlZnh0AA1s"
+            + "ZWdhY3kgY29tbWl0dAAoMDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlh"
+            + "YmNkZWYwMTIzNDU2N3EAfgALc3IAEmphdmEuc3FsLlRpbWVzdGFtcCYY"
+            + "1cgBU79lAgABSQAFbmFub3N4cgAOamF2YS51dGlsLkRhdGVoaoEBS1l0"
+            + "GQMAAHhwdwgAAADo1KUQAHgAAAAA";
+
+    /** Applying a delta to its base rebuilds the target: for empty,
+     *  equal and unrelated strings, and for edited copies of the base. */
+    @Test
+    public void deltaRoundTripTest() {
+        Random random = new Random(42);
+        byte[] base = new byte[10000];
+        random.nextBytes(base);
+        byte[] edited = Arrays.copyOf(base, 12000);
+        System.arraycopy(base, 5000, edited, 2000, 3000);
+        edited[7] ^= 1;
+        byte[] unrelated = new byte[3000];
+        random.nextBytes(unrelated);
+        byte[][] targets = {
+            new byte[0], base, edited, unrelated,
+            Arrays.copyOfRange(base, 100, 9000),
+        };
+        for (byte[] target : targets) {
+            assertDeltaRoundTrip(base, target);
+        }
+        assertDeltaRoundTrip(new byte[0], base);
+        for (int i = 0; i < 200; i += 1) {
+            byte[] target = base.clone();
+            for (int k = random.nextInt(20); k >= 0; k -= 1) {
+                target[random.nextInt(target.length)] =
+                        (byte) random.nextInt();
+            }
+            int cut = random.nextInt(target.length);
+            assertDeltaRoundTrip(base, Arrays.copyOf(
+                    Arrays.copyOfRange(target, cut, target.length),
+                    target.length - cut + random.nextInt(300)));
+        }
+    }
+
+    /** Asserts that the delta from BASE to TARGET rebuilds TARGET. */
+    private static void assertDeltaRoundTrip(byte[] base, byte[] target) {
+        assertArrayEquals(target,
+                Delta.apply(base, Delta.create(base, target)));
+    }
+
+    /** Asserts that merging OURS and THEIRS, both edits of BASE, gives
+     *  EXPECTED, with conflicts iff CONFLICT. */
+    private static void assertMerge(String base, String ours, String theirs,
+                                    String expected, boolean conflict)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean result = Diff3.merge(base.getBytes(StandardCharsets.UTF_8),
+                ours.getBytes(StandardCharsets.UTF_8),
+                theirs.getBytes(StandardCharsets.UTF_8), out);
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+        assertEquals(conflict, result);
+    }
+
 }
 
 
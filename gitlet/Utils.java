@@ -61,6 +61,15 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns a new SHA-1 MessageDigest. */
+    static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -202,6 +211,13 @@ class Utils {
         return Paths.get(first.getPath(), others).toFile();
     }
 
+    /** Returns the absolute, normalized path of FILE, so that every
+     *  spelling of one path (relative, with "." or "..") gives the same
+     *  string.  Used to key per-repository caches. */
+    static String pathKey(File file) {
+        return file.toPath().toAbsolutePath().normalize().toString();
+    }
+
 
     /* SERIALIZATION UTILITIES */
 
@@ -0,0 +1,270 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** A cache of working-file metadata stored in .gitlet/index, so that
+ * unchanged files can be recognized from a single stat call instead of
+ * being read and hashed. Each entry records a file's modification time,
+ * size, file key (inode on most systems) and the SHA-1 of its contents,
+ * which is also the ID of its blob.
+ *
+ *  An entry is only trusted when the file's metadata is unchanged and
+ *  the file was last modified strictly before the index itself was
+ *  written. A file modified in the same clock tick as the index write
+ *  ("racily clean") could have changed without its timestamp showing
+ *  it, so it is hashed again.
+ *  @author Wesley Zhang
+ */
+class WorkingIndex {
+
+    /** Magic bytes and version that start the index file. */
+    private static final byte[] HEADER = {'G', 'L', 'I', 1};
+
+    /** Loads the index in FILE for the working directory ROOT. A missing
+     * or unreadable index file gives an empty index.
+     *
+     * @param file index file
+     * @param root working directory
+     * @return index
+     * */
+    static WorkingIndex load(File file, File root) {
+        WorkingIndex index = new WorkingIndex(file, root);
+        if (!file.isFile()) {
+            return index;
+        }
+        try {
+            index._stamp = Files.getLastModifiedTime(file.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+            ByteBuffer buf = ByteBuffer.wrap(Utils.readContents(file));
+            byte[] header = new byte[HEADER.length];
+            buf.get(header);
+            if (!Arrays.equals(header, HEADER)) {
+                return new WorkingIndex(file, root);
+            }
+            int count = BinaryFormat.readVarint32(buf);
+            for (int i = 0; i < count; i += 1) {
+                String path = BinaryFormat.readString(buf);
+                long mtime = buf.getLong();
+                long size = BinaryFormat.readVarint(buf);
+                String key = BinaryFormat.readString(buf);
+                String id = BinaryFormat.readId(buf);
+                index._entries.put(path, new Entry(mtime, size, key, id));
+            }
+        } catch (IOException | RuntimeException excp) {
+            return new WorkingIndex(file, root);
+        }
+        return index;
+    }
+
+    /** An empty index stored in FILE for working directory ROOT.
+     *
+     * @param file index file
+     * @param root working directory
+     * */
+    private WorkingIndex(File file, File root) {
+        _file = file;
+        _root = root;
+        _entries = new TreeMap<>();
+        _stamp = Long.MIN_VALUE;
+    }
+
+    /** Returns the SHA-1 of the contents of working file PATH, or null
+     * if it does not exist or is not a plain file. Uses the cached hash
+     * when the file's metadata shows it is unchanged. Safe to call from
+     * several threads; files are hashed outside the lock.
+     *
+     * @param path file name relative to the working directory
+     * @return sha1 of the file's contents
+     * */
+    String hash(String path) {
+        File file = Utils.join(_root, path);
+        BasicFileAttributes attrs = stat(file);
+        if (attrs == null || !attrs.isRegularFile()) {
+            forget(path);
+            return null;
+        }
+        long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        String key = String.valueOf(attrs.fileKey());
+        synchronized (this) {
+            Entry entry = _entries.get(path);
+            if (entry != null && entry.matches(mtime, attrs.size(), key)
+                    && mtime < _stamp) {
+                return entry._id;
+            }
+        }
+        String id = hashFile(file);
+        synchronized (this) {
+            _entries.put(path, new Entry(mtime, attrs.size(), key, id));
+            _dirty = true;
+        }
+        return id;
+    }
+
+    /** Records that working file PATH was just written with contents
+     * whose SHA-1 is ID, so it need not be hashed again.
+     *
+     * @param path file name relative to the working directory
+     * @param id sha1 of the contents written
+     * */
+    synchronized void record(String path, String id) {
+        BasicFileAttributes attrs = stat(Utils.join(_root, path));
+        if (attrs == null) {
+            return;
+        }
+        long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        String key = String.valueOf(attrs.fileKey());
+        _entries.put(path, new Entry(mtime, attrs.size(), key, id));
+        _dirty = true;
+    }
+
+    /** Drops any entry for PATH.
+     *
+     * @param path file name relative to the working directory
+     * */
+    synchronized void forget(String path) {
+        if (_entries.remove(path) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Writes the index back to its file if it has changed. */
+    synchronized void save() {
+        if (!_dirty) {
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            out.write(HEADER);
+            BinaryFormat.writeVarint(out, _entries.size());
+            ByteBuffer time = ByteBuffer.allocate(Long.BYTES);
+            for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+                Entry entry = e.getValue();
+                BinaryFormat.writeString(out, e.getKey());
+                out.write(time.putLong(0, entry._mtime).array());
+                BinaryFormat.writeVarint(out, entry._size);
+                BinaryFormat.writeString(out, entry._key);
+                BinaryFormat.writeId(out, entry._id);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContents(_file, out.toByteArray());
+        _dirty = false;
+        try {
+            _stamp = Files.getLastModifiedTime(_file.toPath())
+                    .to(TimeUnit.NANOSECONDS);
+        } catch (IOException excp) {
+            _stamp = Long.MIN_VALUE;
+        }
+    }
+
+    /** Returns true iff the index file has not been written by anyone
+     * else since this index was loaded or last saved, so a long-running
+     * process can keep using it.
+     *
+     * @return whether this index is up to date with its file
+     * */
+    synchronized boolean isCurrent() {
+        try {
+            return Files.getLastModifiedTime(_file.toPath())
+                    .to(TimeUnit.NANOSECONDS) == _stamp;
+        } catch (IOException excp) {
+            return _stamp == Long.MIN_VALUE;
+        }
+    }
+
+    /** Returns the SHA-1 of the contents of FILE, read in chunks.
+     *
+     * @param file file to hash
+     * @return sha1 of its contents
+     * */
+    static String hashFile(File file) {
+        MessageDigest md = Utils.sha1Digest();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return BinaryFormat.toHex(md.digest());
+    }
+
+    /** Returns the attributes of FILE, or null if it does not exist.
+     *
+     * @param file file to stat
+     * @return its attributes
+     * */
+    private static BasicFileAttributes stat(File file) {
+        try {
+            return Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Cached metadata and hash of one working file. */
+    private static class Entry {
+        /** An entry for a file modified at MTIME nanoseconds, SIZE bytes
+         * long, with file key KEY and contents hashing to ID. */
+        Entry(long mtime, long size, String key, String id) {
+            _mtime = mtime;
+            _size = size;
+            _key = key;
+            _id = id;
+        }
+
+        /** Returns true iff this entry's metadata is MTIME, SIZE and KEY.
+         *
+         * @param mtime modification time in nanoseconds
+         * @param size size in bytes
+         * @param key file key
+         * @return whether the metadata matches
+         * */
+        boolean matches(long mtime, long size, String key) {
+            return _mtime == mtime && _size == size && _key.equals(key);
+        }
+
+        /** Modification time in nanoseconds since the epoch. */
+        private final long _mtime;
+
+        /** Size in bytes. */
+        private final long _size;
+
+        /** File key, or "null" where the file system has none. */
+        private final String _key;
+
+        /** SHA-1 of the contents. */
+        private final String _id;
+    }
+
+    /** Index file. */
+    private final File _file;
+
+    /** Working directory. */
+    private final File _root;
+
+    /** Entries by file name. */
+    private final TreeMap<String, Entry> _entries;
+
+    /** Modification time of the index file when it was loaded or last
+     * saved, in nanoseconds; files modified at or after it are racy. */
+    private long _stamp;
+
+    /** True iff _entries differ from the index file. */
+    private boolean _dirty;
+}